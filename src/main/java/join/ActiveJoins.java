@@ -0,0 +1,93 @@
+package join;
+
+import hudson.Extension;
+import hudson.model.Run;
+import hudson.model.listeners.RunListener;
+
+import java.lang.ref.WeakReference;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Tracks the {@link JoinAction}s that are armed and still waiting, by the id of their split build.
+ * <p>
+ * Jenkins may drop build records from memory and load them again, which would create another copy of the join
+ * state. Locking on one copy does not protect against updates of the other one, so completions could get lost.
+ * A split build loaded again while another copy of it is still in memory gets the tracked action instead, so all
+ * notifications go to a single instance.
+ * <p>
+ * The actions are only weakly referenced. Every change of the join state is saved, so once no copy is left in
+ * memory the next load reads the current state from disk, and joins which never fire do not keep their build
+ * records in memory.
+ */
+final class ActiveJoins {
+    private static final ConcurrentMap<String, WeakReference<JoinAction>> JOINS =
+            new ConcurrentHashMap<String, WeakReference<JoinAction>>();
+
+    private ActiveJoins() {
+    }
+
+    /**
+     * Tracks the action if it is waiting, unless another action is tracked for the split build already.
+     *
+     * @return the tracked action
+     */
+    static JoinAction pin(Run<?,?> splitBuild, JoinAction joinAction) {
+        if (!joinAction.isWaiting()) {
+            return joinAction;
+        }
+        String id = splitBuild.getExternalizableId();
+        WeakReference<JoinAction> reference = new WeakReference<JoinAction>(joinAction);
+        while (true) {
+            WeakReference<JoinAction> existing = JOINS.putIfAbsent(id, reference);
+            if (existing == null) {
+                return joinAction;
+            }
+            JoinAction pinned = existing.get();
+            if (pinned != null) {
+                return pinned;
+            }
+            // the tracked copy was collected, replace it
+            if (JOINS.replace(id, existing, reference)) {
+                return joinAction;
+            }
+        }
+    }
+
+    static void release(Run<?,?> splitBuild, JoinAction joinAction) {
+        String id = splitBuild.getExternalizableId();
+        WeakReference<JoinAction> existing = JOINS.get(id);
+        if (existing != null && (existing.get() == joinAction || existing.get() == null)) {
+            JOINS.remove(id, existing);
+        }
+    }
+
+    static JoinAction get(Run<?,?> splitBuild) {
+        String id = splitBuild.getExternalizableId();
+        WeakReference<JoinAction> reference = JOINS.get(id);
+        if (reference == null) {
+            return null;
+        }
+        JoinAction pinned = reference.get();
+        if (pinned == null) {
+            JOINS.remove(id, reference);
+        }
+        return pinned;
+    }
+
+    static int size() {
+        return JOINS.size();
+    }
+
+    @Extension
+    public static class RunListenerImpl extends RunListener<Run> {
+        public RunListenerImpl() {
+            super(Run.class);
+        }
+
+        @Override
+        public void onDeleted(Run run) {
+            JOINS.remove(run.getExternalizableId());
+        }
+    }
+}
@@ -0,0 +1,177 @@
+package join;
+
+import hudson.EnvVars;
+import hudson.Extension;
+import hudson.XmlFile;
+import hudson.model.AbstractBuild;
+import hudson.model.AbstractProject;
+import hudson.model.Item;
+import hudson.model.Saveable;
+import hudson.model.TaskListener;
+import hudson.model.listeners.ItemListener;
+import hudson.model.listeners.SaveableListener;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Memoizes the downstream projects found by the {@link DownstreamDiscovery} extensions per project.
+ * <p>
+ * An entry is valid as long as neither the configuration version of its project, which is increased whenever the
+ * project is saved, nor the generation of the item set, which is increased whenever items are created, renamed,
+ * deleted or loaded, changed.
+ */
+final class DownstreamCache {
+    private static final Map<AbstractProject<?,?>, Long> VERSIONS = new WeakHashMap<AbstractProject<?,?>, Long>();
+    private static final Map<AbstractProject<?,?>, Entry> ENTRIES = new WeakHashMap<AbstractProject<?,?>, Entry>();
+    private static final Map<AbstractBuild<?,?>, List<AbstractProject<?,?>>> BUILD_DOWNSTREAM =
+            new WeakHashMap<AbstractBuild<?,?>, List<AbstractProject<?,?>>>();
+    private static long generation;
+    private static final Logger LOGGER = Logger.getLogger(DownstreamCache.class.getName());
+
+    private DownstreamCache() {}
+
+    /**
+     * @return a new list of the downstream projects of the project, see
+     * {@link DownstreamDiscovery#getDownstream(AbstractProject, EnvVars)}.
+     */
+    static List<AbstractProject<?,?>> getDownstream(AbstractProject<?,?> project, EnvVars env) {
+        Entry entry = getEntry(project);
+        List<AbstractProject<?,?>> downstream = new ArrayList<AbstractProject<?,?>>(entry.downstream);
+        for (DownstreamDiscovery discovery : entry.environmentDependent) {
+            downstream.addAll(discovery.getDownstream(project, env));
+        }
+        return downstream;
+    }
+
+    /**
+     * @return a new list of the downstream projects of the build, expanded with its environment. The expansion is
+     * done once per build, and the environment is only computed if a {@link DownstreamDiscovery} depends on it.
+     */
+    static List<AbstractProject<?,?>> getDownstream(AbstractBuild<?,?> build, TaskListener listener)
+            throws IOException, InterruptedException {
+        synchronized (DownstreamCache.class) {
+            List<AbstractProject<?,?>> downstream = BUILD_DOWNSTREAM.get(build);
+            if (downstream != null) {
+                return new ArrayList<AbstractProject<?,?>>(downstream);
+            }
+        }
+        long start = System.currentTimeMillis();
+        AbstractProject<?,?> project = build.getProject();
+        Entry entry = getEntry(project);
+        List<AbstractProject<?,?>> downstream = new ArrayList<AbstractProject<?,?>>(entry.downstream);
+        if (!entry.environmentDependent.isEmpty()) {
+            EnvVars env = build.getEnvironment(listener);
+            for (DownstreamDiscovery discovery : entry.environmentDependent) {
+                downstream.addAll(discovery.getDownstream(project, env));
+            }
+        }
+        LOGGER.log(Level.FINE, "Expanded {0} downstream projects of {1} in {2} ms",
+                new Object[] {downstream.size(), build, System.currentTimeMillis() - start});
+        synchronized (DownstreamCache.class) {
+            BUILD_DOWNSTREAM.put(build, downstream);
+        }
+        return new ArrayList<AbstractProject<?,?>>(downstream);
+    }
+
+    private static Entry getEntry(AbstractProject<?,?> project) {
+        long version;
+        long currentGeneration;
+        synchronized (DownstreamCache.class) {
+            version = getVersion(project);
+            currentGeneration = generation;
+            Entry entry = ENTRIES.get(project);
+            if (entry != null && entry.version == version && entry.generation == currentGeneration) {
+                return entry;
+            }
+        }
+        // discover outside of the lock, a concurrent change leaves an outdated entry which is never matched
+        Entry entry = new Entry(version, currentGeneration);
+        for (DownstreamDiscovery discovery : DownstreamDiscovery.all()) {
+            if (discovery.dependsOnEnvironment(project)) {
+                entry.environmentDependent.add(discovery);
+            } else {
+                entry.downstream.addAll(discovery.getDownstream(project, null));
+            }
+        }
+        synchronized (DownstreamCache.class) {
+            ENTRIES.put(project, entry);
+        }
+        return entry;
+    }
+
+    private static long getVersion(AbstractProject<?,?> project) {
+        Long version = VERSIONS.get(project);
+        return version == null ? 0 : version;
+    }
+
+    /**
+     * @return a stamp which changes whenever the project is saved or the item set changes.
+     */
+    static synchronized String stamp(AbstractProject<?,?> project) {
+        return getVersion(project) + "/" + generation;
+    }
+
+    static synchronized void projectChanged(AbstractProject<?,?> project) {
+        VERSIONS.put(project, getVersion(project) + 1);
+    }
+
+    static synchronized void itemsChanged() {
+        generation++;
+    }
+
+    private static final class Entry {
+        private final long version;
+        private final long generation;
+        private final List<AbstractProject<?,?>> downstream = new ArrayList<AbstractProject<?,?>>();
+        private final List<DownstreamDiscovery> environmentDependent = new ArrayList<DownstreamDiscovery>();
+
+        Entry(long version, long generation) {
+            this.version = version;
+            this.generation = generation;
+        }
+    }
+
+    @Extension
+    public static class SaveableListenerImpl extends SaveableListener {
+        @Override
+        public void onChange(Saveable o, XmlFile file) {
+            if (o instanceof AbstractProject) {
+                projectChanged((AbstractProject<?,?>) o);
+            }
+        }
+    }
+
+    @Extension
+    public static class ItemListenerImpl extends ItemListener {
+        @Override
+        public void onCreated(Item item) {
+            itemsChanged();
+        }
+
+        @Override
+        public void onCopied(Item src, Item item) {
+            itemsChanged();
+        }
+
+        @Override
+        public void onLoaded() {
+            itemsChanged();
+        }
+
+        @Override
+        public void onDeleted(Item item) {
+            itemsChanged();
+        }
+
+        @Override
+        public void onRenamed(Item item, String oldName, String newName) {
+            itemsChanged();
+        }
+    }
+}
@@ -0,0 +1,110 @@
+package join;
+
+import hudson.EnvVars;
+import hudson.Extension;
+import hudson.ExtensionList;
+import hudson.ExtensionPoint;
+import hudson.model.AbstractProject;
+import hudson.plugins.parameterizedtrigger.BuildTriggerConfig;
+import jenkins.model.Jenkins;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Finds the downstream projects of a split project, i.e. the projects the join waits for.
+ * <p>
+ * Implement this extension point to let other trigger plugins take part in joins. Results are memoized per project
+ * until the project configuration or the set of items changes, see {@link DownstreamCache}.
+ */
+public abstract class DownstreamDiscovery implements ExtensionPoint {
+
+    /**
+     * @param project the split project
+     * @param env environment of the split build used to expand project names, or null when building the
+     * dependency graph
+     * @return the projects triggered by the project, a project triggered several times is contained several times.
+     */
+    public abstract List<AbstractProject<?,?>> getDownstream(AbstractProject<?,?> project, EnvVars env);
+
+    /**
+     * Whether the downstream projects found for the project depend on the environment of the split build.
+     * Such results are computed once per split build instead of being memoized per project.
+     */
+    public boolean dependsOnEnvironment(AbstractProject<?,?> project) {
+        return false;
+    }
+
+    public static ExtensionList<DownstreamDiscovery> all() {
+        return Jenkins.getInstance().getExtensionList(DownstreamDiscovery.class);
+    }
+
+    /**
+     * Downstream projects triggered by {@link hudson.tasks.BuildTrigger}.
+     */
+    @Extension(ordinal = 40)
+    public static class BuildTriggerDiscovery extends DownstreamDiscovery {
+        @Override
+        public List<AbstractProject<?,?>> getDownstream(AbstractProject<?,?> project, EnvVars env) {
+            ArrayList<AbstractProject<?,?>> ret = new ArrayList<AbstractProject<?,?>>();
+            hudson.tasks.BuildTrigger buildTrigger = project.getPublishersList().get(hudson.tasks.BuildTrigger.class);
+            if (buildTrigger != null) {
+                for (AbstractProject<?,?> childProject : buildTrigger.getChildProjects(project.getParent())) {
+                    ret.add(childProject);
+                }
+            }
+            return ret;
+        }
+    }
+
+    /**
+     * Downstream projects triggered by parameterized triggers nested in a flexible publisher.
+     */
+    @Extension(ordinal = 30)
+    public static class FlexiblePublishDiscovery extends DownstreamDiscovery {
+        @Override
+        public List<AbstractProject<?,?>> getDownstream(AbstractProject<?,?> project, EnvVars env) {
+            return JoinIntegrations.get().flexiblePublish.getParameterizedDownstream(project);
+        }
+    }
+
+    /**
+     * Downstream projects triggered by the parameterized trigger.
+     */
+    @Extension(ordinal = 20)
+    public static class ParameterizedTriggerDiscovery extends DownstreamDiscovery {
+        @Override
+        public List<AbstractProject<?,?>> getDownstream(AbstractProject<?,?> project, EnvVars env) {
+            List<AbstractProject<?,?>> ret = new ArrayList<AbstractProject<?,?>>();
+            for (BuildTriggerConfig config :
+                    JoinIntegrations.get().parameterizedTrigger.getConfigs(project.getPublishersList())) {
+                for (AbstractProject<?,?> downstream : config.getProjectList(project.getParent(), env)) {
+                    ret.add(downstream);
+                }
+            }
+            return ret;
+        }
+
+        @Override
+        public boolean dependsOnEnvironment(AbstractProject<?,?> project) {
+            for (BuildTriggerConfig config :
+                    JoinIntegrations.get().parameterizedTrigger.getConfigs(project.getPublishersList())) {
+                if (config.getProjects() != null && config.getProjects().contains("$")) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    /**
+     * Downstream projects triggered by the downstream-ext plugin.
+     */
+    @Extension(ordinal = 10)
+    public static class DownstreamExtDiscovery extends DownstreamDiscovery {
+        @Override
+        public List<AbstractProject<?,?>> getDownstream(AbstractProject<?,?> project, EnvVars env) {
+            return JoinIntegrations.get().downstreamExt.getChildProjects(project.getParent(), project.getPublishersList());
+        }
+    }
+}
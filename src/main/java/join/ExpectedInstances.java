@@ -0,0 +1,153 @@
+package join;
+
+import hudson.model.ParameterValue;
+import hudson.model.ParametersAction;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * The builds of the tracked downstream projects a join expects, added when they are queued, see
+ * {@link JoinQueueListener}. Builds of the same project are told apart by their parameters and the order they were
+ * queued in, as project#parametersHash#ordinal.
+ * <p>
+ * Not thread safe, guarded by the {@link JoinAction} it belongs to.
+ */
+final class ExpectedInstances {
+    private final Set<String> trackedProjects;
+    private final List<String> pendingInstances = new LinkedList<String>();
+    private final Map<String, Integer> instanceOrdinals = new HashMap<String, Integer>();
+    private final Map<String, Integer> triggeredCounts = new TreeMap<String, Integer>();
+    private final Map<String, Integer> completedCounts = new TreeMap<String, Integer>();
+
+    ExpectedInstances(Collection<String> trackedProjects) {
+        this.trackedProjects = new HashSet<String>(trackedProjects);
+    }
+
+    /**
+     * Restores the state kept by the {@link JoinAction} before it was moved here, any of it may be null.
+     */
+    void restore(List<String> pending, Map<String, Integer> ordinals, Map<String, Integer> triggered,
+            Map<String, Integer> completed) {
+        if (pending != null) {
+            pendingInstances.addAll(pending);
+        }
+        if (ordinals != null) {
+            instanceOrdinals.putAll(ordinals);
+        }
+        if (triggered != null) {
+            triggeredCounts.putAll(triggered);
+        }
+        if (completed != null) {
+            completedCounts.putAll(completed);
+        }
+    }
+
+    void track(Collection<String> projectNames) {
+        trackedProjects.addAll(projectNames);
+    }
+
+    boolean isTracked(String projectName) {
+        return trackedProjects.contains(projectName);
+    }
+
+    /**
+     * @return false if the project is not tracked
+     */
+    boolean expect(String projectName, String parametersHash) {
+        if (!trackedProjects.contains(projectName)) {
+            return false;
+        }
+        String key = projectName + "#" + parametersHash;
+        int ordinal = increment(instanceOrdinals, key) - 1;
+        pendingInstances.add(key + "#" + ordinal);
+        increment(triggeredCounts, projectName);
+        return true;
+    }
+
+    /**
+     * @return false if no build with these parameters was expected
+     */
+    boolean cancel(String projectName, String parametersHash) {
+        String prefix = projectName + "#" + parametersHash + "#";
+        for (int i = pendingInstances.size() - 1; i >= 0; i--) {
+            if (pendingInstances.get(i).startsWith(prefix)) {
+                pendingInstances.remove(i);
+                triggeredCounts.put(projectName, triggeredCounts.get(projectName) - 1);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @param parametersHash see {@link #parametersHash}, or null to complete any expected build of the project
+     * @return false if no build of the project was expected
+     */
+    boolean complete(String projectName, String parametersHash) {
+        // a build whose parameters changed after it was queued still completes one instance of its project
+        if ((parametersHash != null && remove(projectName + "#" + parametersHash + "#"))
+                || remove(projectName + "#")) {
+            increment(completedCounts, projectName);
+            return true;
+        }
+        return false;
+    }
+
+    private boolean remove(String prefix) {
+        for (Iterator<String> it = pendingInstances.iterator(); it.hasNext();) {
+            if (it.next().startsWith(prefix)) {
+                it.remove();
+                return true;
+            }
+        }
+        return false;
+    }
+
+    boolean hasPending() {
+        return !pendingInstances.isEmpty();
+    }
+
+    List<String> getPending() {
+        return new ArrayList<String>(pendingInstances);
+    }
+
+    Map<String, Integer> getTriggeredCounts() {
+        return new TreeMap<String, Integer>(triggeredCounts);
+    }
+
+    Map<String, Integer> getCompletedCounts() {
+        return new TreeMap<String, Integer>(completedCounts);
+    }
+
+    private static int increment(Map<String, Integer> counts, String key) {
+        Integer count = counts.get(key);
+        int incremented = count == null ? 1 : count + 1;
+        counts.put(key, incremented);
+        return incremented;
+    }
+
+    /**
+     * @return a hash of the parameters identifying a build among the builds of the same project.
+     */
+    static String parametersHash(ParametersAction parameters) {
+        if (parameters == null) {
+            return "0";
+        }
+        List<String> values = new ArrayList<String>();
+        for (ParameterValue value : parameters.getParameters()) {
+            values.add(String.valueOf(value));
+        }
+        Collections.sort(values);
+        return Integer.toHexString(values.hashCode());
+    }
+}
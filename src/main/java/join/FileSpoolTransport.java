@@ -0,0 +1,164 @@
+package join;
+
+import hudson.Extension;
+import hudson.Util;
+import hudson.util.AtomicFileWriter;
+import org.apache.commons.io.IOUtils;
+
+import java.io.File;
+import java.io.FileFilter;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * {@link JoinCompletionTransport} using a directory shared by the controllers, e.g. a network file system.
+ * <p>
+ * Enabled by setting <code>join.FileSpoolTransport.dir</code>. Events for a controller are written atomically to
+ * <code>&lt;dir&gt;/&lt;controller&gt;/inbox</code>, named by the digest of their id, so sending an event twice
+ * writes the same file. Acknowledged events leave a marker in <code>&lt;dir&gt;/&lt;controller&gt;/acks</code>, which
+ * stops them from being sent again. Markers older than {@link #ACK_RETENTION} hours are deleted, sending an event
+ * later than that may deliver it again.
+ */
+@Extension
+public class FileSpoolTransport extends JoinCompletionTransport {
+    private static final Logger LOGGER = Logger.getLogger(FileSpoolTransport.class.getName());
+    private static final String EVENT_SUFFIX = ".event";
+
+    /**
+     * Hours the acknowledgement of an event is kept, i.e. how long senders may retry sending it.
+     */
+    public static int ACK_RETENTION = Integer.getInteger(FileSpoolTransport.class.getName() + ".ackRetention", 7 * 24);
+
+    private static final long PRUNE_INTERVAL = TimeUnit.HOURS.toMillis(1);
+
+    private volatile long lastPrunedAt;
+
+    static File getSpoolDir() {
+        String dir = System.getProperty(FileSpoolTransport.class.getName() + ".dir");
+        return dir == null ? null : new File(dir);
+    }
+
+    @Override
+    public boolean isEnabled() {
+        return getSpoolDir() != null;
+    }
+
+    @Override
+    public void send(JoinCompletionEvent event) throws IOException {
+        File controllerDir = getControllerDir(event.getController());
+        String name = Util.getDigestOf(event.getId());
+        if (new File(new File(controllerDir, "acks"), name).exists()) {
+            return;
+        }
+        File inbox = new File(controllerDir, "inbox");
+        if (!inbox.isDirectory() && !inbox.mkdirs()) {
+            throw new IOException("Failed to create " + inbox);
+        }
+        AtomicFileWriter writer = new AtomicFileWriter(new File(inbox, name + EVENT_SUFFIX));
+        try {
+            event.toProperties().store(writer, event.toString());
+            writer.commit();
+        } finally {
+            writer.abort();
+        }
+    }
+
+    @Override
+    public List<JoinCompletionEvent> receive(int max) throws IOException {
+        File[] files = new File(getControllerDir(getControllerName()), "inbox").listFiles(new FileFilter() {
+            public boolean accept(File file) {
+                return file.getName().endsWith(EVENT_SUFFIX);
+            }
+        });
+        List<JoinCompletionEvent> events = new ArrayList<JoinCompletionEvent>();
+        if (files == null) {
+            return events;
+        }
+        Arrays.sort(files, new Comparator<File>() {
+            public int compare(File a, File b) {
+                return Long.valueOf(a.lastModified()).compareTo(b.lastModified());
+            }
+        });
+        for (File file : files) {
+            if (events.size() >= max) {
+                break;
+            }
+            Properties properties = new Properties();
+            InputStream in = null;
+            try {
+                in = new FileInputStream(file);
+                properties.load(in);
+                events.add(JoinCompletionEvent.fromProperties(properties));
+            } catch (IOException e) {
+                LOGGER.log(Level.WARNING, "Failed to read " + file, e);
+            } catch (RuntimeException e) {
+                LOGGER.log(Level.WARNING, "Dropping malformed join completion " + file, e);
+                Util.deleteFile(file);
+            } finally {
+                IOUtils.closeQuietly(in);
+            }
+        }
+        return events;
+    }
+
+    @Override
+    public void acknowledge(JoinCompletionEvent event) throws IOException {
+        File controllerDir = getControllerDir(event.getController());
+        String name = Util.getDigestOf(event.getId());
+        File acks = new File(controllerDir, "acks");
+        if (!acks.isDirectory() && !acks.mkdirs()) {
+            throw new IOException("Failed to create " + acks);
+        }
+        Util.touch(new File(acks, name));
+        Util.deleteFile(new File(new File(controllerDir, "inbox"), name + EVENT_SUFFIX));
+    }
+
+    /**
+     * Deletes the expired acknowledgements of this controller, at most once per hour.
+     */
+    @Override
+    public void prune() throws IOException {
+        long now = System.currentTimeMillis();
+        if (now - lastPrunedAt < PRUNE_INTERVAL) {
+            return;
+        }
+        lastPrunedAt = now;
+        prune(now);
+    }
+
+    /**
+     * @return the number of acknowledgements deleted
+     */
+    int prune(long now) throws IOException {
+        final long expiredBefore = now - TimeUnit.HOURS.toMillis(ACK_RETENTION);
+        File[] expired = new File(getControllerDir(getControllerName()), "acks").listFiles(new FileFilter() {
+            public boolean accept(File file) {
+                return file.lastModified() < expiredBefore;
+            }
+        });
+        if (expired == null) {
+            return 0;
+        }
+        for (File file : expired) {
+            Util.deleteFile(file);
+        }
+        return expired.length;
+    }
+
+    private static File getControllerDir(String controller) throws IOException {
+        File spoolDir = getSpoolDir();
+        if (spoolDir == null) {
+            throw new IOException("No spool directory configured");
+        }
+        return new File(spoolDir, controller.replaceAll("[^A-Za-z0-9._-]", "_"));
+    }
+}
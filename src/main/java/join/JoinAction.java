@@ -1,44 +1,201 @@
 package join;
 
-import hudson.Launcher;
+import com.thoughtworks.xstream.converters.MarshallingContext;
+import com.thoughtworks.xstream.converters.UnmarshallingContext;
+import com.thoughtworks.xstream.io.HierarchicalStreamWriter;
+import hudson.Util;
 import hudson.model.AbstractBuild;
 import hudson.model.AbstractProject;
 import hudson.model.Action;
-import hudson.model.BuildListener;
+import hudson.model.Api;
 import hudson.model.Cause.UpstreamCause;
 import hudson.model.Descriptor;
+import hudson.model.ParameterValue;
+import hudson.model.ParametersAction;
 import hudson.model.Result;
 import hudson.model.Run;
+import hudson.model.Saveable;
 import hudson.model.TaskListener;
 import hudson.tasks.Publisher;
 import hudson.util.DescribableList;
+import hudson.util.XStream2;
+import jenkins.model.Jenkins;
+import jenkins.model.RunAction2;
+import jenkins.util.Timer;
+import org.kohsuke.stapler.export.Exported;
+import org.kohsuke.stapler.export.ExportedBean;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+@ExportedBean
+public class JoinAction implements RunAction2 {
+    /**
+     * Number of previous split builds shown in the latency trend of the join report.
+     */
+    public static int TREND_BUILDS = Integer.getInteger(JoinAction.class.getName() + ".trendBuilds", 10);
+
+    /**
+     * Upper bound of the downstream projects registered with a single join while it is running.
+     */
+    public static int MAX_REGISTERED = Integer.getInteger(JoinAction.class.getName() + ".maxRegistered", 1000);
+
+    /**
+     * Minimum seconds between two progress summaries of a join in the console, see {@link JoinLog} for the changes.
+     */
+    public static int PROGRESS_INTERVAL = Integer.getInteger(JoinAction.class.getName() + ".progressInterval", 30);
+
+    /**
+     * Number of entries of the join log shown in the join report.
+     */
+    public static int LOG_ENTRIES = Integer.getInteger(JoinAction.class.getName() + ".logEntries", 100);
+
+    /**
+     * Milliseconds the join log, the join summary and the save of the split build are deferred after a change of the
+     * join state, so a burst of downstream completions is written once. Firing the join writes them right away.
+     */
+    public static long FLUSH_DELAY = Long.getLong(JoinAction.class.getName() + ".flushDelay", 1000L);
+
+    private static final Logger LOGGER = Logger.getLogger(JoinAction.class.getName());
+
+    /**
+     * Whether split builds reference the join configuration stored once per distinct content instead of keeping
+     * a copy of it in every build.xml.
+     */
+    public static boolean COMPACT_CONFIG = Boolean.getBoolean(JoinAction.class.getName() + ".compactConfig");
 
-public class JoinAction implements Action {
     private List<String> pendingDownstreamProjects;
     private List<String> completedDownstreamProjects;
     private List<String> consideredBuilds;
     private transient String joinProjects;
     private DescribableList<Publisher, Descriptor<Publisher>> joinPublishers;
     private Result resultThreshold;
+    /**
+     * Digest of the join configuration in the {@link JoinConfigStore}, used instead of
+     * {@link #joinPublishers} and {@link #resultThreshold} with {@link #COMPACT_CONFIG}.
+     */
+    private String configDigest;
+    private transient JoinConfigStore.Snapshot config;
     private Result overallResult;
 
+    private long armedAt;
+    private long lastDownstreamFinishedAt;
+    private long firedAt;
+    private List<DownstreamTiming> downstreamTimings;
+
+    private int coalesceWindow;
+    private boolean parallelPublishers;
+    private int publisherTimeout;
+    private List<String> coalescedBuilds;
+    private String coalescedInto;
+
+    /**
+     * Parameters of parameterized join triggers resolved when the split build ran, by config digest.
+     */
+    private Map<String, List<ParameterValue>> capturedParameters;
+
+    private JoinAggregation aggregation;
+
+    /**
+     * Ids of the registrations of downstream projects done while the join was running.
+     */
+    private List<String> registrations;
+    private int registeredProjects;
+    /**
+     * Whether the split build may still add downstream projects, see {@link #arm}. An open join does not fire.
+     */
+    private boolean open;
+
+    /**
+     * Expected builds of the tracked downstream projects, null for split builds recorded before they were tracked.
+     */
+    private ExpectedInstances instances;
+
+    /**
+     * Join projects triggered for the fired join, see {@link #markJoinTriggered}.
+     */
+    private Set<String> triggeredJoinProjects;
+
+    @Deprecated
+    private List<String> aggregateParameterNames;
+    @Deprecated
+    private boolean aggregateFingerprints;
+    @Deprecated
+    private Map<String, String> aggregatedParameters;
+    @Deprecated
+    private Set<String> trackedProjects;
+    @Deprecated
+    private List<String> pendingInstances;
+    @Deprecated
+    private Map<String, Integer> instanceOrdinals;
+    @Deprecated
+    private Map<String, Integer> triggeredCounts;
+    @Deprecated
+    private Map<String, Integer> completedCounts;
+
+    private transient Run<?,?> owner;
+    private transient long lastProgressAt;
+    private transient List<String> unflushedLog;
+    private transient boolean dirty;
+    private transient boolean flushScheduled;
+    /**
+     * Serializes the writes of {@link #flush}, which are done without holding the lock of the action.
+     */
+    private transient Object flushLock = new Object();
+
     public JoinAction(JoinTrigger joinTrigger, List<AbstractProject<?,?>> downstream) {
-        this.pendingDownstreamProjects = new LinkedList<String>();
-        for(AbstractProject<?,?> project : downstream) {
-            if(!project.isDisabled()) {
-                this.pendingDownstreamProjects.add(project.getFullName());
-            }
-        }
+        this(joinTrigger, enabledProjectNames(downstream));
+    }
+
+    JoinAction(JoinTrigger joinTrigger, Collection<String> pendingDownstreamProjects) {
+        this.pendingDownstreamProjects = new LinkedList<String>(pendingDownstreamProjects);
         this.joinProjects = joinTrigger.getJoinProjectsValue();
-        this.joinPublishers = joinTrigger.getJoinPublishers();
-        this.resultThreshold = joinTrigger.getResultThreshold();
+        storeJoinConfig(joinTrigger.getJoinPublishers(), joinTrigger.getResultThreshold());
         this.completedDownstreamProjects = new LinkedList<String>();
         this.consideredBuilds = new LinkedList<String>();
         this.overallResult = Result.SUCCESS;
+        this.armedAt = System.currentTimeMillis();
+        this.downstreamTimings = new ArrayList<DownstreamTiming>();
+        this.coalesceWindow = joinTrigger.getCoalesceWindow();
+        this.parallelPublishers = joinTrigger.isParallelPublishers();
+        this.publisherTimeout = joinTrigger.getPublisherTimeout();
+        this.coalescedBuilds = new LinkedList<String>();
+        this.aggregation = new JoinAggregation(joinTrigger.getAggregateParameterNames(), joinTrigger.isAggregateFingerprints());
+        this.instances = new ExpectedInstances(pendingDownstreamProjects);
+    }
+
+    private Object readResolve() {
+        if (aggregation == null) {
+            aggregation = new JoinAggregation(aggregateParameterNames != null
+                    ? aggregateParameterNames : Collections.<String>emptyList(), aggregateFingerprints);
+            if (aggregatedParameters != null) {
+                aggregation.putAll(aggregatedParameters);
+            }
+        }
+        if (instances == null && trackedProjects != null) {
+            instances = new ExpectedInstances(trackedProjects);
+            instances.restore(pendingInstances, instanceOrdinals, triggeredCounts, completedCounts);
+        }
+        aggregateParameterNames = null;
+        aggregatedParameters = null;
+        trackedProjects = null;
+        pendingInstances = null;
+        instanceOrdinals = null;
+        triggeredCounts = null;
+        completedCounts = null;
+        flushLock = new Object();
+        return this;
     }
 
     public String getDisplayName() {
@@ -53,51 +210,909 @@ public class JoinAction implements Action {
         return "join";
     }
 
-    // upstreamBuild is the build that contains this JoinAction.
-    public synchronized boolean downstreamFinished(AbstractBuild<?,?> upstreamBuild, AbstractBuild<?,?> finishedBuild, TaskListener listener) {
-        if (!consideredBuilds.contains(finishedBuild.toString())) {
-            consideredBuilds.add(finishedBuild.toString());
-            String finishedBuildProjectName = finishedBuild.getProject().getFullName();
-            if(pendingDownstreamProjects.remove(finishedBuildProjectName)) {
-                this.overallResult = this.overallResult.combine(finishedBuild.getResult());
-                completedDownstreamProjects.add(finishedBuildProjectName);
-                checkPendingDownstream(upstreamBuild, listener);
-            } else {
-                listener.getLogger().println("[Join] Pending does not contain " + finishedBuildProjectName);
+    public void onAttached(Run<?, ?> r) {
+        this.owner = r;
+        ActiveJoins.pin(r, this);
+    }
+
+    public void onLoad(Run<?, ?> r) {
+        this.owner = r;
+        JoinAction pinned = ActiveJoins.pin(r, this);
+        if (pinned != this) {
+            // the split build was loaded again while its join is running, keep using the running instance
+            pinned.owner = r;
+            List<Action> actions = r.getActions();
+            int index = actions.indexOf(this);
+            if (index >= 0) {
+                actions.set(index, pinned);
             }
+        }
+    }
+
+    /**
+     * @return the join of the split build, the running instance if it is still waiting, or null if there is none.
+     */
+    static JoinAction of(Run<?,?> splitBuild) {
+        JoinAction pinned = ActiveJoins.get(splitBuild);
+        return pinned != null ? pinned : splitBuild.getAction(JoinAction.class);
+    }
+
+    /**
+     * The split build this action belongs to.
+     */
+    public Run<?,?> getOwner() {
+        return owner;
+    }
+
+    public Api getApi() {
+        return new Api(this);
+    }
+
+    private void storeJoinConfig(DescribableList<Publisher, Descriptor<Publisher>> joinPublishers, Result resultThreshold) {
+        if (COMPACT_CONFIG) {
             try {
-                upstreamBuild.save();
-            } catch (java.io.IOException e) {
-                listener.getLogger().printf("Unable to save upstream build.");
+                this.config = JoinConfigStore.store(joinPublishers, resultThreshold);
+                this.configDigest = config.getDigest();
+                return;
+            } catch (IOException e) {
+                LOGGER.log(Level.WARNING, "Failed to store join configuration, keeping a copy in the build", e);
+            }
+        }
+        this.joinPublishers = joinPublishers;
+        this.resultThreshold = resultThreshold;
+    }
+
+    private synchronized JoinConfigStore.Snapshot getConfig() {
+        if (config == null) {
+            if (configDigest != null) {
+                config = JoinConfigStore.load(configDigest);
+                if (config == null) {
+                    config = getProjectConfig();
+                }
+            }
+            if (config == null) {
+                config = new JoinConfigStore.Snapshot(joinPublishers, resultThreshold);
+            }
+        }
+        return config;
+    }
+
+    /**
+     * The current join configuration of the project, in place of a stored one that got lost.
+     */
+    private JoinConfigStore.Snapshot getProjectConfig() {
+        JoinTrigger joinTrigger = null;
+        if (owner instanceof AbstractBuild) {
+            joinTrigger = ((AbstractBuild<?,?>) owner).getProject().getPublishersList().get(JoinTrigger.class);
+        }
+        if (joinTrigger == null) {
+            LOGGER.log(Level.WARNING, "Join configuration {0} of {1} is missing, the join runs no publishers",
+                    new Object[] {configDigest, owner});
+            return null;
+        }
+        LOGGER.log(Level.WARNING, "Join configuration {0} of {1} is missing, using the current one of its project",
+                new Object[] {configDigest, owner});
+        return new JoinConfigStore.Snapshot(joinTrigger.getJoinPublishers(), joinTrigger.getResultThreshold());
+    }
+
+    DescribableList<Publisher, Descriptor<Publisher>> getJoinPublishers() {
+        DescribableList<Publisher, Descriptor<Publisher>> publishers = getConfig().joinPublishers;
+        if (publishers == null) {
+            return new DescribableList<Publisher, Descriptor<Publisher>>(Saveable.NOOP);
+        }
+        return publishers;
+    }
+
+    int getCoalesceWindow() {
+        return coalesceWindow;
+    }
+
+    Result getResultThreshold() {
+        Result threshold = getConfig().resultThreshold;
+        return threshold == null ? Result.SUCCESS : threshold;
+    }
+
+    /**
+     * @return the join of the running split build, arming an open one if there is none yet. Downstream projects
+     * registered with it during the build are waited for once it is closed by the {@link JoinTrigger} or the
+     * {@link JoinWaitBuilder}.
+     */
+    static JoinAction arm(AbstractBuild<?,?> build) {
+        JoinAction joinAction = build.getAction(JoinAction.class);
+        if (joinAction == null) {
+            JoinTrigger joinTrigger = build.getProject().getPublishersList().get(JoinTrigger.class);
+            joinAction = new JoinAction(joinTrigger != null ? joinTrigger : new JoinTrigger(),
+                    Collections.<String>emptyList());
+            joinAction.open = true;
+            build.addAction(joinAction);
+        }
+        return joinAction;
+    }
+
+    /**
+     * @return true if the join was armed and still waits for downstream builds. Actions of builds recorded before
+     * the join was armed explicitly count as not waiting.
+     */
+    synchronized boolean isWaiting() {
+        return armedAt != 0 && firedAt == 0 && !isComplete();
+    }
+
+    synchronized boolean isOpen() {
+        return open;
+    }
+
+    /**
+     * Adds the downstream projects of the split project to an open join and closes it.
+     */
+    synchronized void close(List<AbstractProject<?,?>> downstream) {
+        List<String> names = enabledProjectNames(downstream);
+        pendingDownstreamProjects.addAll(names);
+        if (instances != null) {
+            instances.track(names);
+        }
+        close();
+    }
+
+    synchronized void close() {
+        open = false;
+    }
+
+    /**
+     * Blocks until the join fired or the timeout expired.
+     *
+     * @param timeoutMillis milliseconds to wait, 0 to wait until the join fired
+     * @return whether the join fired
+     */
+    synchronized boolean awaitFired(long timeoutMillis) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        while (firedAt == 0) {
+            if (timeoutMillis <= 0) {
+                wait();
+                continue;
+            }
+            long remaining = deadline - System.currentTimeMillis();
+            if (remaining <= 0) {
+                return false;
+            }
+            wait(remaining);
+        }
+        return true;
+    }
+
+    private static List<String> enabledProjectNames(List<AbstractProject<?,?>> projects) {
+        List<String> names = new ArrayList<String>();
+        for(AbstractProject<?,?> project : projects) {
+            if(!project.isDisabled()) {
+                names.add(project.getFullName());
+            }
+        }
+        return names;
+    }
+
+    // upstreamBuild is the build that contains this JoinAction.
+    public boolean downstreamFinished(Run<?,?> upstreamBuild, AbstractBuild<?,?> finishedBuild, TaskListener listener) {
+        String finishedBuildProjectName = finishedBuild.getProject().getFullName();
+        Completion completion;
+        synchronized (this) {
+            completion = recordCompletion(finishedBuild.toString(), finishedBuildProjectName,
+                    ExpectedInstances.parametersHash(finishedBuild.getAction(ParametersAction.class)),
+                    finishedBuild.getResult(), new DownstreamTiming(finishedBuild, armedAt));
+            if (completion == Completion.RECORDED && aggregation != null) {
+                aggregation.aggregate(finishedBuild);
+            }
+        }
+        return completed(completion, upstreamBuild, finishedBuildProjectName, listener);
+    }
+
+    /**
+     * Notifies the join of a downstream build which completed elsewhere, see {@link JoinCompletionTransport}.
+     *
+     * @return true if the completion fired the join
+     */
+    public boolean downstreamFinished(Run<?,?> upstreamBuild, JoinCompletionEvent event, TaskListener listener) {
+        return downstreamFinished(upstreamBuild, Collections.singletonList(event), listener);
+    }
+
+    /**
+     * Notifies the join of a batch of downstream builds which completed elsewhere. The batch is recorded under a
+     * single lock, with one log line, one fire check and one save.
+     *
+     * @return true if the batch fired the join
+     */
+    public boolean downstreamFinished(Run<?,?> upstreamBuild, List<JoinCompletionEvent> events, TaskListener listener) {
+        List<String> recorded = new ArrayList<String>();
+        List<String> notPending = new ArrayList<String>();
+        synchronized (this) {
+            for (JoinCompletionEvent event : events) {
+                Completion completion = recordCompletion(event.getBuildId(), event.getProjectName(), null,
+                        event.getResult(), new DownstreamTiming(event, armedAt));
+                if (completion == Completion.RECORDED) {
+                    recorded.add(event.getBuildId());
+                } else if (completion == Completion.NOT_PENDING) {
+                    notPending.add(event.getProjectName());
+                }
+            }
+            if (!recorded.isEmpty() || !notPending.isEmpty()) {
+                dirty = true;
             }
         }
-        return pendingDownstreamProjects.isEmpty();
+        if (!notPending.isEmpty()) {
+            listener.getLogger().println("[Join] Pending does not contain " + notPending);
+        }
+        boolean fired = false;
+        if (!recorded.isEmpty()) {
+            listener.getLogger().println("[Join] " + recorded.size() + " downstream builds finished: " + recorded);
+            fired = checkPending(upstreamBuild, listener);
+        }
+        // the batch is already written once, no need to defer it
+        flush(upstreamBuild);
+        return fired;
     }
 
-    public Result getOverallResult() {
+    private boolean completed(Completion completion, Run<?,?> upstreamBuild, String projectName, TaskListener listener) {
+        if (completion != Completion.ALREADY_CONSIDERED) {
+            scheduleFlush(upstreamBuild);
+            if (completion == Completion.RECORDED) {
+                checkPending(upstreamBuild, listener);
+            } else {
+                listener.getLogger().println("[Join] Pending does not contain " + projectName);
+            }
+        }
+        return isComplete();
+    }
+
+    /**
+     * Outcome of {@link #recordCompletion}.
+     */
+    enum Completion {
+        /** The build was pending and is now recorded as completed. */
+        RECORDED,
+        /** The build was seen for the first time but its project is not pending. */
+        NOT_PENDING,
+        /** The build was already considered before. */
+        ALREADY_CONSIDERED
+    }
+
+    /**
+     * Updates the join state for a completed downstream build, independent of how the completion was notified.
+     *
+     * @param buildId unique id of the completed build, each build is only considered once
+     * @param timing the timing of the completed build, or null if unknown
+     */
+    synchronized Completion recordCompletion(String buildId, String projectName, Result result, DownstreamTiming timing) {
+        return recordCompletion(buildId, projectName, null, result, timing);
+    }
+
+    /**
+     * Updates the join state for a completed downstream build, completing one of the expected instances of its
+     * project.
+     *
+     * @param parametersHash see {@link ExpectedInstances#parametersHash}, or null to complete any expected instance
+     * of the project
+     */
+    synchronized Completion recordCompletion(String buildId, String projectName, String parametersHash,
+            Result result, DownstreamTiming timing) {
+        if (consideredBuilds.contains(buildId)) {
+            return Completion.ALREADY_CONSIDERED;
+        }
+        consideredBuilds.add(buildId);
+        boolean instanceCompleted = instances != null && instances.complete(projectName, parametersHash);
+        if (!pendingDownstreamProjects.remove(projectName) && !instanceCompleted) {
+            logChange("not-pending", buildId, result);
+            return Completion.NOT_PENDING;
+        }
+        this.overallResult = this.overallResult.combine(result);
+        completedDownstreamProjects.add(projectName);
+        if (timing != null) {
+            recordTiming(timing);
+        }
+        logChange("completed", buildId, result);
+        return Completion.RECORDED;
+    }
+
+    /**
+     * Adds the values collected from the downstream builds to the parameters of the join build.
+     */
+    synchronized void addAggregatedParameters(List<Action> actions) {
+        if (aggregation != null) {
+            aggregation.addTo(actions);
+        }
+    }
+
+    /**
+     * Values collected from the completed downstream builds, by join build parameter name.
+     */
+    @Exported
+    public synchronized Map<String, String> getAggregatedParameters() {
+        return aggregation == null ? Collections.<String, String>emptyMap() : aggregation.getValues();
+    }
+
+    /**
+     * Expects one more build of a tracked downstream project, called when the build enters the queue, see
+     * {@link ExpectedInstances}.
+     * <p>
+     * Not called while the queue is locked, see {@link JoinQueueListener}.
+     */
+    synchronized void expectInstance(String projectName, String parametersHash) {
+        if (instances != null && instances.expect(projectName, parametersHash) && owner != null) {
+            scheduleFlush(owner);
+        }
+    }
+
+    /**
+     * Stops expecting a build of a downstream project which left the queue without being built.
+     */
+    synchronized void cancelInstance(String projectName, String parametersHash) {
+        if (instances != null && instances.cancel(projectName, parametersHash) && owner != null) {
+            scheduleFlush(owner);
+        }
+    }
+
+    /**
+     * @return whether the join waits or waited for builds of the downstream project, i.e. it was pending, registered
+     * or is tracked.
+     */
+    synchronized boolean expects(String projectName) {
+        return pendingDownstreamProjects.contains(projectName) || completedDownstreamProjects.contains(projectName)
+                || (instances != null && instances.isTracked(projectName));
+    }
+
+    /**
+     * @return true if neither a downstream project nor an expected build instance is pending.
+     */
+    synchronized boolean isComplete() {
+        return !open && pendingDownstreamProjects.isEmpty() && (instances == null || !instances.hasPending());
+    }
+
+    /**
+     * Expected builds of the downstream projects that did not complete yet.
+     */
+    @Exported
+    public synchronized List<String> getPendingInstances() {
+        return instances == null ? Collections.<String>emptyList() : instances.getPending();
+    }
+
+    /**
+     * Number of builds queued per tracked downstream project.
+     */
+    @Exported
+    public synchronized Map<String, Integer> getTriggeredCounts() {
+        return instances == null ? Collections.<String, Integer>emptyMap() : instances.getTriggeredCounts();
+    }
+
+    /**
+     * Number of completed builds per tracked downstream project.
+     */
+    @Exported
+    public synchronized Map<String, Integer> getCompletedCounts() {
+        return instances == null ? Collections.<String, Integer>emptyMap() : instances.getCompletedCounts();
+    }
+
+    /**
+     * Adds downstream projects the join waits for, while the split build or one of its downstream builds is running.
+     * Either all projects are registered or none is. A project registered n times is waited for until n of its
+     * builds completed.
+     *
+     * @param projectNames full names of the downstream projects
+     * @param registrationId identifies the registration, registering the same id again has no effect
+     * @return false if the registration was already done before
+     * @throws IllegalStateException if the join already fired or the projects exceed {@link #MAX_REGISTERED}
+     */
+    public synchronized boolean registerPendingDownstream(Collection<String> projectNames, String registrationId) {
+        if (registrations == null) {
+            registrations = new LinkedList<String>();
+        }
+        if (registrations.contains(registrationId)) {
+            return false;
+        }
+        if (firedAt != 0) {
+            throw new IllegalStateException("The join of " + owner + " already fired");
+        }
+        if (registeredProjects + projectNames.size() > MAX_REGISTERED) {
+            throw new IllegalStateException("Registering " + projectNames.size() + " projects exceeds the limit of "
+                    + MAX_REGISTERED + " registered projects of " + owner);
+        }
+        registrations.add(registrationId);
+        registeredProjects += projectNames.size();
+        pendingDownstreamProjects.addAll(projectNames);
+        if (instances != null) {
+            instances.track(projectNames);
+        }
+        return true;
+    }
+
+    /**
+     * Marks the join as fired if no downstream build is pending anymore.
+     *
+     * @return true for the single call which fired the join
+     */
+    synchronized boolean markFired() {
+        if (!isComplete() || firedAt != 0) {
+            return false;
+        }
+        firedAt = System.currentTimeMillis();
+        notifyAll();
+        if (owner != null) {
+            ActiveJoins.release(owner, this);
+        }
+        return true;
+    }
+
+    /**
+     * Records that the join project is triggered for the fired join. The join projects are triggered by the join
+     * dependency of the build completing the join, by the completion of a registered downstream build outside the
+     * dependency graph or by a received completion, and when the split build outlives its downstream builds also by
+     * its own join dependency; only the first of them triggers.
+     *
+     * @return false if the join project was already triggered
+     */
+    synchronized boolean markJoinTriggered(String joinProjectName) {
+        if (triggeredJoinProjects == null) {
+            triggeredJoinProjects = new HashSet<String>();
+        }
+        if (!triggeredJoinProjects.add(joinProjectName)) {
+            return false;
+        }
+        if (owner != null) {
+            scheduleFlush(owner);
+        }
+        return true;
+    }
+
+    private void recordTiming(DownstreamTiming timing) {
+        if (downstreamTimings == null) {
+            downstreamTimings = new ArrayList<DownstreamTiming>();
+        }
+        downstreamTimings.add(timing);
+        lastDownstreamFinishedAt = Math.max(lastDownstreamFinishedAt, timing.getFinishedAt());
+    }
+
+    @Exported
+    public synchronized Result getOverallResult() {
         return overallResult;
     }
 
-    public synchronized void checkPendingDownstream(AbstractBuild<?,?> owner, TaskListener listener) {
-        if(pendingDownstreamProjects.isEmpty()) {
+    public void checkPendingDownstream(Run<?,?> owner, TaskListener listener) {
+        checkPending(owner, listener);
+    }
+
+    /**
+     * Fires the join if no downstream build is pending anymore. The join state is decided under the lock of the
+     * action, the analytics, the join publishers and the writes of the fired join run without holding it.
+     *
+     * @return true for the single call which fired the join
+     */
+    private boolean checkPending(Run<?,?> owner, TaskListener listener) {
+        if (!fireIfComplete(owner, listener)) {
+            return false;
+        }
+        JoinAnalytics.record(owner, this);
+        if(getOverallResult().isWorseThan(getResultThreshold())) {
+            listener.getLogger().println("Minimum result threshold not met for join project");
+        } else if (!(owner instanceof AbstractBuild)) {
+            // join publishers are only configured for split builds of projects
+        } else if (parallelPublishers) {
+            JoinPublishers.performInParallel(getJoinPublishers(), (AbstractBuild<?,?>) owner, listener, publisherTimeout);
+        } else {
+            JoinPublishers.perform(getJoinPublishers(), (AbstractBuild<?,?>) owner, listener);
+        }
+        flush(owner);
+        JoinCompletionListener.fireFired(owner, this);
+        return true;
+    }
+
+    private synchronized boolean fireIfComplete(Run<?,?> owner, TaskListener listener) {
+        if(isComplete()) {
+            if (!markFired()) {
+                // the join already fired for an earlier notification
+                return false;
+            }
+            logChange("fired", String.valueOf(owner), overallResult);
             listener.getLogger().println("All downstream projects complete!");
-            if(this.overallResult.isWorseThan(this.resultThreshold)) {
-                listener.getLogger().println("Minimum result threshold not met for join project");
-            } else {
-                final Launcher launcher = null;
-
-                for(Publisher pub : this.joinPublishers) {
-                    try {
-                        pub.perform(owner, launcher, (BuildListener)listener);
-                    } catch (InterruptedException e) {
-                        listener.getLogger().print(e.toString());
-                    } catch (IOException e) {
-                        listener.getLogger().print(e.toString());
+            return true;
+        }
+        if (lastProgressAt == 0) {
+            lastProgressAt = System.currentTimeMillis();
+            listener.getLogger().println("Project " + owner.getParent().getName() + " still waiting for " + pendingDownstreamProjects.toString() + " builds to complete");
+        } else if (System.currentTimeMillis() - lastProgressAt >= PROGRESS_INTERVAL * 1000L) {
+            // only counts from here on, the changes are in the join log
+            lastProgressAt = System.currentTimeMillis();
+            int pendingInstances = getPendingInstances().size();
+            listener.getLogger().println("[Join] " + owner.getFullDisplayName() + " waiting for "
+                    + pendingDownstreamProjects.size() + " downstream projects"
+                    + (pendingInstances > 0 ? " and " + pendingInstances + " queued downstream builds" : "")
+                    + ", " + completedDownstreamProjects.size() + " completed");
+        }
+        scheduleFlush(owner);
+        return false;
+    }
+
+    /**
+     * Records a change of the join state for the {@link JoinLog} of the split build, written by the next
+     * {@link #flush}.
+     */
+    private synchronized void logChange(String event, String subject, Result result) {
+        if (owner == null) {
+            return;
+        }
+        if (unflushedLog == null) {
+            unflushedLog = new ArrayList<String>();
+        }
+        unflushedLog.add(JoinLog.line(event, subject, result, pendingDownstreamProjects.size()));
+        dirty = true;
+    }
+
+    /**
+     * Flushes the changes of the join state after {@link #FLUSH_DELAY}, together with the ones following in the
+     * meantime. The flush always runs on the timer, so callers holding the lock of the action never write.
+     */
+    private synchronized void scheduleFlush(final Run<?,?> owner) {
+        dirty = true;
+        if (flushScheduled) {
+            return;
+        }
+        flushScheduled = true;
+        Timer.get().schedule(new Runnable() {
+            public void run() {
+                synchronized (JoinAction.this) {
+                    flushScheduled = false;
+                }
+                flush(owner);
+            }
+        }, Math.max(0, FLUSH_DELAY), TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Writes the changes of the join state since the last flush: the join log, the join summary and the split build.
+     * The changes are taken under the lock of the action and written without holding it; the join state itself is
+     * serialized under the lock, see {@link ConverterImpl}.
+     */
+    void flush(Run<?,?> owner) {
+        synchronized (flushLock) {
+            List<String> log;
+            JoinSummary summary;
+            synchronized (this) {
+                if (!dirty) {
+                    return;
+                }
+                dirty = false;
+                log = unflushedLog;
+                unflushedLog = null;
+                summary = getSummary();
+            }
+            if (log != null) {
+                try {
+                    JoinLog.append(owner.getRootDir(), log);
+                } catch (IOException e) {
+                    LOGGER.log(Level.WARNING, "Unable to write the join log of " + owner, e);
+                }
+            }
+            try {
+                summary.write(owner.getRootDir());
+            } catch (IOException e) {
+                LOGGER.log(Level.WARNING, "Unable to write the join summary of " + owner, e);
+            }
+            try {
+                owner.save();
+            } catch (IOException e) {
+                LOGGER.log(Level.WARNING, "Unable to save " + owner, e);
+            }
+        }
+    }
+
+    /**
+     * The latest changes of the join state.
+     */
+    public List<JoinLog.Entry> getLogEntries() {
+        if (owner == null) {
+            return Collections.emptyList();
+        }
+        try {
+            List<JoinLog.Entry> entries = JoinLog.tail(owner.getRootDir(), LOG_ENTRIES);
+            synchronized (this) {
+                if (unflushedLog != null) {
+                    for (String line : unflushedLog) {
+                        entries.add(JoinLog.parse(line));
                     }
                 }
             }
+            return entries.size() > LOG_ENTRIES ? entries.subList(entries.size() - LOG_ENTRIES, entries.size()) : entries;
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Unable to read the join log of " + owner, e);
+            return Collections.emptyList();
+        }
+    }
+
+    synchronized void captureParameters(String configDigest, List<ParameterValue> values) {
+        if (capturedParameters == null) {
+            capturedParameters = new HashMap<String, List<ParameterValue>>();
+        }
+        capturedParameters.put(configDigest, new ArrayList<ParameterValue>(values));
+    }
+
+    /**
+     * @return the parameters captured for the parameterized join trigger config with the given digest, or null if
+     * they have to be resolved when the join fires.
+     */
+    synchronized List<ParameterValue> getCapturedParameters(String configDigest) {
+        if (capturedParameters == null) {
+            return null;
+        }
+        return capturedParameters.get(configDigest);
+    }
+
+    /**
+     * Summary of the current join state, see {@link JoinSummary}.
+     */
+    public synchronized JoinSummary getSummary() {
+        JoinSummary.Status status;
+        if (coalescedInto != null) {
+            status = JoinSummary.Status.COALESCED;
+        } else if (firedAt == 0) {
+            status = JoinSummary.Status.WAITING;
+        } else if (overallResult.isWorseThan(getResultThreshold())) {
+            status = JoinSummary.Status.NOT_MET;
         } else {
-            listener.getLogger().println("Project " + owner.getProject().getName() + " still waiting for " + pendingDownstreamProjects.toString() + " builds to complete");
+            status = JoinSummary.Status.FIRED;
+        }
+        return new JoinSummary(owner != null ? owner.getNumber() : 0, status, pendingDownstreamProjects.size(),
+                completedDownstreamProjects.size(), overallResult, armedAt, firedAt);
+    }
+
+    /**
+     * Records that the join firing of this split build was merged into the one of firstAction.
+     */
+    void coalesced(Run<?,?> splitBuild, JoinAction firstAction, TaskListener listener) {
+        String into = String.valueOf(firstAction.getOwner());
+        synchronized (this) {
+            coalescedInto = into;
+            scheduleFlush(splitBuild);
+        }
+        listener.getLogger().println("[Join] Join of " + splitBuild.getFullDisplayName() + " coalesced into " + into);
+    }
+
+    void recordCoalesced(String buildName) {
+        if (coalescedBuilds == null) {
+            coalescedBuilds = new LinkedList<String>();
+        }
+        synchronized (coalescedBuilds) {
+            if (!coalescedBuilds.contains(buildName)) {
+                coalescedBuilds.add(buildName);
+            }
+        }
+    }
+
+    /**
+     * Split builds whose join firings were merged into the one of this build.
+     */
+    @Exported
+    public List<String> getCoalescedBuilds() {
+        if (coalescedBuilds == null) {
+            return Collections.emptyList();
+        }
+        synchronized (coalescedBuilds) {
+            return new ArrayList<String>(coalescedBuilds);
+        }
+    }
+
+    /**
+     * The split build this join firing was merged into, or null if it fired on its own.
+     */
+    @Exported
+    public synchronized String getCoalescedInto() {
+        return coalescedInto;
+    }
+
+    @Exported
+    public synchronized List<String> getPendingDownstreamProjects() {
+        return new ArrayList<String>(pendingDownstreamProjects);
+    }
+
+    @Exported
+    public synchronized List<String> getCompletedDownstreamProjects() {
+        return new ArrayList<String>(completedDownstreamProjects);
+    }
+
+    /**
+     * Timings of the downstream builds that completed so far, in order of completion.
+     */
+    @Exported
+    public synchronized List<DownstreamTiming> getDownstreamTimings() {
+        if (downstreamTimings == null) {
+            return Collections.emptyList();
+        }
+        return new ArrayList<DownstreamTiming>(downstreamTimings);
+    }
+
+    /**
+     * Time the join was set up, i.e. the split build ran the join trigger.
+     */
+    @Exported
+    public long getArmedAt() {
+        return armedAt;
+    }
+
+    /**
+     * Time the last downstream build finished, or 0 if none finished yet.
+     */
+    @Exported
+    public long getLastDownstreamFinishedAt() {
+        return lastDownstreamFinishedAt;
+    }
+
+    /**
+     * Time all downstream builds were found complete and the join fired, or 0 if it did not fire yet.
+     */
+    @Exported
+    public long getFiredAt() {
+        return firedAt;
+    }
+
+    @Exported
+    public synchronized boolean isFired() {
+        return firedAt != 0;
+    }
+
+    /**
+     * Time between the last downstream build finishing and the join firing.
+     */
+    @Exported
+    public long getIdleMillis() {
+        if (firedAt == 0 || lastDownstreamFinishedAt == 0) {
+            return 0;
+        }
+        return Math.max(0, firedAt - lastDownstreamFinishedAt);
+    }
+
+    /**
+     * Time between setting up the join and the join firing.
+     */
+    @Exported
+    public long getFanInMillis() {
+        if (firedAt == 0 || armedAt == 0) {
+            return 0;
+        }
+        return Math.max(0, firedAt - armedAt);
+    }
+
+    /**
+     * The downstream build on the critical path, i.e. the one the join had to wait for longest.
+     */
+    @Exported
+    public synchronized DownstreamTiming getCriticalPath() {
+        DownstreamTiming critical = null;
+        if (downstreamTimings != null) {
+            for (DownstreamTiming timing : downstreamTimings) {
+                if (critical == null || timing.getFinishedAt() > critical.getFinishedAt()) {
+                    critical = timing;
+                }
+            }
+        }
+        return critical;
+    }
+
+    /**
+     * Formats a time span for the join report.
+     */
+    public String formatMillis(long millis) {
+        return Util.getTimeSpanString(millis);
+    }
+
+    /**
+     * Join actions of the last {@link #TREND_BUILDS} split builds of the same project, starting with this one.
+     */
+    public List<JoinAction> getTrend() {
+        List<JoinAction> trend = new ArrayList<JoinAction>();
+        Run<?,?> run = owner;
+        while (run != null && trend.size() < TREND_BUILDS) {
+            JoinAction action = run.getAction(JoinAction.class);
+            if (action != null) {
+                trend.add(action);
+            }
+            run = run.getPreviousBuild();
+        }
+        return trend;
+    }
+
+    /**
+     * Start, finish and queue time of a single downstream build.
+     */
+    @ExportedBean(defaultVisibility = 2)
+    public static class DownstreamTiming {
+        private final String projectName;
+        private final int buildNumber;
+        private final Result result;
+        private final long queuedMillis;
+        private final long startedAt;
+        private final long finishedAt;
+
+        DownstreamTiming(AbstractBuild<?,?> build, long armedAt) {
+            this.projectName = build.getProject().getFullName();
+            this.buildNumber = build.getNumber();
+            this.result = build.getResult();
+            this.startedAt = build.getStartTimeInMillis();
+            // the duration is not yet known when notified through the dependency graph
+            this.finishedAt = build.getDuration() > 0 ? startedAt + build.getDuration() : System.currentTimeMillis();
+            this.queuedMillis = armedAt > 0 ? Math.max(0, startedAt - armedAt) : 0;
+        }
+
+        DownstreamTiming(JoinCompletionEvent event, long armedAt) {
+            this.projectName = event.getProjectName();
+            this.buildNumber = event.getBuildNumber();
+            this.result = event.getResult();
+            this.startedAt = event.getStartedAt();
+            this.finishedAt = startedAt + event.getDuration();
+            this.queuedMillis = armedAt > 0 ? Math.max(0, startedAt - armedAt) : 0;
+        }
+
+        @Exported
+        public String getProjectName() {
+            return projectName;
+        }
+
+        @Exported
+        public int getBuildNumber() {
+            return buildNumber;
+        }
+
+        /**
+         * URL of the downstream build relative to the context root, or null if it no longer exists.
+         */
+        public String getUrl() {
+            AbstractProject<?,?> project = Jenkins.getInstance().getItemByFullName(projectName, AbstractProject.class);
+            if (project == null) {
+                return null;
+            }
+            return project.getUrl() + buildNumber + "/";
+        }
+
+        @Exported
+        public Result getResult() {
+            return result;
+        }
+
+        /**
+         * Time between the join being set up and this build starting.
+         */
+        @Exported
+        public long getQueuedMillis() {
+            return queuedMillis;
+        }
+
+        @Exported
+        public long getStartedAt() {
+            return startedAt;
+        }
+
+        @Exported
+        public long getFinishedAt() {
+            return finishedAt;
+        }
+
+        @Exported
+        public long getDurationMillis() {
+            return Math.max(0, finishedAt - startedAt);
+        }
+    }
+
+    /**
+     * Serializes the join state under the lock of the action, as {@link #flush} saves the split build without
+     * holding it.
+     */
+    public static class ConverterImpl extends XStream2.PassthruConverter<JoinAction> {
+        public ConverterImpl(XStream2 xstream) {
+            super(xstream);
+        }
+
+        @Override
+        public void marshal(Object source, HierarchicalStreamWriter writer, MarshallingContext context) {
+            synchronized (source) {
+                super.marshal(source, writer, context);
+            }
+        }
+
+        @Override
+        protected void callback(JoinAction joinAction, UnmarshallingContext context) {
         }
     }
 
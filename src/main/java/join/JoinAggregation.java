@@ -0,0 +1,90 @@
+package join;
+
+import hudson.model.AbstractBuild;
+import hudson.model.Action;
+import hudson.model.ParameterValue;
+import hudson.model.ParametersAction;
+import hudson.model.StringParameterValue;
+import hudson.tasks.Fingerprinter;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Collects the selected build variables and the artifact fingerprints of the completed downstream builds, which are
+ * passed to the join build as parameters named after the downstream project.
+ * <p>
+ * Not thread safe, guarded by the {@link JoinAction} it belongs to.
+ */
+final class JoinAggregation {
+    private final List<String> parameterNames;
+    private final boolean fingerprints;
+    private final Map<String, String> values = new TreeMap<String, String>();
+
+    JoinAggregation(List<String> parameterNames, boolean fingerprints) {
+        this.parameterNames = new ArrayList<String>(parameterNames);
+        this.fingerprints = fingerprints;
+    }
+
+    void aggregate(AbstractBuild<?,?> finishedBuild) {
+        if (parameterNames.isEmpty() && !fingerprints) {
+            return;
+        }
+        String prefix = toParameterName(finishedBuild.getProject().getFullName()) + "_";
+        Map<String, String> variables = finishedBuild.getBuildVariables();
+        for (String name : parameterNames) {
+            String value = variables.get(name);
+            if (value != null) {
+                values.put(prefix + toParameterName(name), value);
+            }
+        }
+        if (fingerprints) {
+            Fingerprinter.FingerprintAction fingerprintAction = finishedBuild.getAction(Fingerprinter.FingerprintAction.class);
+            if (fingerprintAction != null) {
+                for (Map.Entry<String, String> record : fingerprintAction.getRecords().entrySet()) {
+                    values.put(prefix + "FINGERPRINT_" + toParameterName(record.getKey()), record.getValue());
+                }
+            }
+        }
+    }
+
+    private static String toParameterName(String name) {
+        return name.replaceAll("[^A-Za-z0-9_]", "_");
+    }
+
+    /**
+     * Adds the collected values to the parameters of the join build.
+     */
+    void addTo(List<Action> actions) {
+        if (values.isEmpty()) {
+            return;
+        }
+        List<ParameterValue> parameters = new ArrayList<ParameterValue>();
+        int existing = -1;
+        for (int i = 0; i < actions.size(); i++) {
+            if (actions.get(i) instanceof ParametersAction) {
+                existing = i;
+                parameters.addAll(((ParametersAction) actions.get(i)).getParameters());
+                break;
+            }
+        }
+        for (Map.Entry<String, String> value : values.entrySet()) {
+            parameters.add(new StringParameterValue(value.getKey(), value.getValue()));
+        }
+        if (existing >= 0) {
+            actions.set(existing, new ParametersAction(parameters));
+        } else {
+            actions.add(new ParametersAction(parameters));
+        }
+    }
+
+    void putAll(Map<String, String> collected) {
+        values.putAll(collected);
+    }
+
+    Map<String, String> getValues() {
+        return new TreeMap<String, String>(values);
+    }
+}
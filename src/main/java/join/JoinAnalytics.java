@@ -0,0 +1,284 @@
+package join;
+
+import hudson.model.Job;
+import hudson.model.Run;
+import hudson.util.IOUtils;
+import jenkins.util.Timer;
+import net.sf.json.JSONArray;
+import net.sf.json.JSONException;
+import net.sf.json.JSONObject;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileFilter;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Append-only log of completed joins per split project, one JSON object per line, and aggregates computed by
+ * streaming over it so join statistics never require loading build records.
+ * <p>
+ * The log is rotated by month of the join firing, <code>joinAnalytics-yyyy-MM.log</code>, so an aggregate only reads
+ * the months it covers.
+ * <p>
+ * Entries are queued by the thread firing the join and appended by a timer task, so firing a join does not wait for
+ * the disk nor for the joins of other projects.
+ */
+final class JoinAnalytics {
+    private static final Logger LOGGER = Logger.getLogger(JoinAnalytics.class.getName());
+
+    private static final Queue<Entry> PENDING = new ConcurrentLinkedQueue<Entry>();
+    /**
+     * Number of writes to the log of each job by its full name, see {@link #stamp}.
+     */
+    private static final ConcurrentMap<String, AtomicLong> STAMPS = new ConcurrentHashMap<String, AtomicLong>();
+    private static final AtomicBoolean DRAIN_SCHEDULED = new AtomicBoolean();
+    /**
+     * Serializes the appends of the queued entries.
+     */
+    private static final Object WRITE_LOCK = new Object();
+
+    private static final Pattern FILE_NAME = Pattern.compile("joinAnalytics-(\\d{4}-\\d{2})\\.log");
+
+    private JoinAnalytics() {}
+
+    /**
+     * @return the log of the month containing the given time
+     */
+    static File getFile(Job<?,?> job, long time) {
+        return new File(job.getRootDir(), "joinAnalytics-" + month(time) + ".log");
+    }
+
+    private static String month(long time) {
+        return new SimpleDateFormat("yyyy-MM").format(new Date(time));
+    }
+
+    /**
+     * @return the logs containing joins fired at or after the given time, oldest first
+     */
+    static List<File> getFiles(Job<?,?> job, long since) {
+        List<File> files = new ArrayList<File>();
+        final String sinceMonth = month(since);
+        File[] rotated = job.getRootDir().listFiles(new FileFilter() {
+            public boolean accept(File file) {
+                Matcher matcher = FILE_NAME.matcher(file.getName());
+                return matcher.matches() && matcher.group(1).compareTo(sinceMonth) >= 0;
+            }
+        });
+        if (rotated != null) {
+            Arrays.sort(rotated);
+            files.addAll(Arrays.asList(rotated));
+        }
+        return files;
+    }
+
+    /**
+     * Queues the timings of a fired join for the log of its split project.
+     */
+    static void record(Run<?,?> splitBuild, JoinAction joinAction) {
+        JSONObject entry = new JSONObject();
+        entry.put("build", splitBuild.getNumber());
+        entry.put("armedAt", joinAction.getArmedAt());
+        entry.put("lastFinishedAt", joinAction.getLastDownstreamFinishedAt());
+        entry.put("firedAt", joinAction.getFiredAt());
+        entry.put("result", String.valueOf(joinAction.getOverallResult()));
+        JoinAction.DownstreamTiming critical = joinAction.getCriticalPath();
+        if (critical != null) {
+            entry.put("last", critical.getProjectName());
+        }
+        JSONArray children = new JSONArray();
+        for (JoinAction.DownstreamTiming timing : joinAction.getDownstreamTimings()) {
+            JSONObject child = new JSONObject();
+            child.put("project", timing.getProjectName());
+            child.put("build", timing.getBuildNumber());
+            child.put("result", String.valueOf(timing.getResult()));
+            child.put("queued", timing.getQueuedMillis());
+            child.put("duration", timing.getDurationMillis());
+            children.add(child);
+        }
+        entry.put("children", children);
+
+        long firedAt = joinAction.getFiredAt();
+        PENDING.add(new Entry(splitBuild.getParent().getFullName(),
+                getFile(splitBuild.getParent(), firedAt != 0 ? firedAt : System.currentTimeMillis()), entry.toString()));
+        if (DRAIN_SCHEDULED.compareAndSet(false, true)) {
+            Timer.get().submit(new Runnable() {
+                public void run() {
+                    DRAIN_SCHEDULED.set(false);
+                    flush();
+                }
+            });
+        }
+    }
+
+    /**
+     * @return a value which changes whenever joins of the job are written to its log, so aggregates can be cached
+     * until then
+     */
+    static long stamp(Job<?,?> job) {
+        AtomicLong stamp = STAMPS.get(job.getFullName());
+        return stamp == null ? 0 : stamp.get();
+    }
+
+    /**
+     * Appends the queued entries to their logs.
+     */
+    static void flush() {
+        synchronized (WRITE_LOCK) {
+            Map<File, List<String>> byFile = new LinkedHashMap<File, List<String>>();
+            Set<String> jobs = new HashSet<String>();
+            Entry entry;
+            while ((entry = PENDING.poll()) != null) {
+                jobs.add(entry.job);
+                List<String> lines = byFile.get(entry.file);
+                if (lines == null) {
+                    lines = new ArrayList<String>();
+                    byFile.put(entry.file, lines);
+                }
+                lines.add(entry.line);
+            }
+            for (Map.Entry<File, List<String>> lines : byFile.entrySet()) {
+                try {
+                    Writer writer = new OutputStreamWriter(new FileOutputStream(lines.getKey(), true), "UTF-8");
+                    try {
+                        for (String line : lines.getValue()) {
+                            writer.write(line);
+                            writer.write('\n');
+                        }
+                    } finally {
+                        writer.close();
+                    }
+                } catch (IOException e) {
+                    LOGGER.log(Level.WARNING, "Unable to write " + lines.getValue().size() + " join analytics entries to "
+                            + lines.getKey(), e);
+                }
+            }
+            for (String job : jobs) {
+                AtomicLong stamp = STAMPS.get(job);
+                if (stamp == null) {
+                    AtomicLong created = new AtomicLong();
+                    stamp = STAMPS.putIfAbsent(job, created);
+                    if (stamp == null) {
+                        stamp = created;
+                    }
+                }
+                stamp.incrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * Aggregates all joins of the job fired at or after the given time.
+     *
+     * @return the number of joins, the average fan-in and idle time and, per downstream project, the number of
+     * builds, failures, average queue time and duration and how often it was the last one to finish.
+     */
+    static JSONObject aggregate(Job<?,?> job, long since) throws IOException {
+        // include the joins which fired but are not written yet
+        flush();
+        long joins = 0;
+        long fanInTotal = 0;
+        long idleTotal = 0;
+        Map<String, long[]> children = new TreeMap<String, long[]>();
+        for (File file : getFiles(job, since)) {
+            BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), "UTF-8"));
+            try {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    JSONObject entry;
+                    try {
+                        entry = JSONObject.fromObject(line);
+                    } catch (JSONException e) {
+                        LOGGER.log(Level.FINE, "Skipping malformed join analytics entry in " + file, e);
+                        continue;
+                    }
+                    long firedAt = entry.optLong("firedAt");
+                    if (firedAt < since) {
+                        continue;
+                    }
+                    joins++;
+                    fanInTotal += Math.max(0, firedAt - entry.optLong("armedAt", firedAt));
+                    idleTotal += Math.max(0, firedAt - entry.optLong("lastFinishedAt", firedAt));
+                    String last = entry.optString("last", null);
+                    JSONArray entryChildren = entry.optJSONArray("children");
+                    for (int i = 0; entryChildren != null && i < entryChildren.size(); i++) {
+                        JSONObject child = entryChildren.getJSONObject(i);
+                        String project = child.getString("project");
+                        long[] stats = children.get(project);
+                        if (stats == null) {
+                            // builds, failures, queued, duration, last to finish
+                            stats = new long[5];
+                            children.put(project, stats);
+                        }
+                        stats[0]++;
+                        if (!"SUCCESS".equals(child.optString("result"))) {
+                            stats[1]++;
+                        }
+                        stats[2] += child.optLong("queued");
+                        stats[3] += child.optLong("duration");
+                    }
+                    if (last != null && children.containsKey(last)) {
+                        children.get(last)[4]++;
+                    }
+                }
+            } finally {
+                IOUtils.closeQuietly(reader);
+            }
+        }
+
+        JSONObject result = new JSONObject();
+        result.put("joins", joins);
+        result.put("averageFanInMillis", joins == 0 ? 0 : fanInTotal / joins);
+        result.put("averageIdleMillis", joins == 0 ? 0 : idleTotal / joins);
+        JSONArray childResults = new JSONArray();
+        for (Map.Entry<String, long[]> child : children.entrySet()) {
+            long[] stats = child.getValue();
+            JSONObject childResult = new JSONObject();
+            childResult.put("project", child.getKey());
+            childResult.put("builds", stats[0]);
+            childResult.put("failures", stats[1]);
+            childResult.put("averageQueuedMillis", stats[2] / stats[0]);
+            childResult.put("averageDurationMillis", stats[3] / stats[0]);
+            childResult.put("lastToFinish", stats[4]);
+            childResults.add(childResult);
+        }
+        result.put("children", childResults);
+        return result;
+    }
+
+    private static final class Entry {
+        private final String job;
+        private final File file;
+        private final String line;
+
+        Entry(String job, File file, String line) {
+            this.job = job;
+            this.file = file;
+            this.line = line;
+        }
+    }
+}
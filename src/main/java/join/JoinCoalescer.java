@@ -0,0 +1,171 @@
+package join;
+
+import hudson.model.AbstractProject;
+import hudson.model.Action;
+import hudson.model.CauseAction;
+import hudson.model.ParameterValue;
+import hudson.model.ParametersAction;
+import hudson.model.Queue;
+import hudson.model.Run;
+import hudson.model.TaskListener;
+import jenkins.model.Jenkins;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Collapses join firings of different split builds of the same project which happen within the coalescing window
+ * configured in {@link JoinTrigger} and target the same join with equivalent parameters.
+ * The first firing opens the window. A join project is scheduled with a quiet period lasting until the window closes,
+ * so the queue folds later firings into the queued join build while it has not started. Merged firings are recorded
+ * on the join action of the first firing.
+ * <p>
+ * Join publishers are not coalesced: they act on their own split build, so every firing runs them.
+ */
+final class JoinCoalescer {
+    /**
+     * Source of the current time, replaced by tests.
+     */
+    interface Clock {
+        long now();
+    }
+
+    static final Clock SYSTEM_CLOCK = new Clock() {
+        public long now() {
+            return System.currentTimeMillis();
+        }
+    };
+
+    static volatile Clock clock = SYSTEM_CLOCK;
+
+    private static final Map<String, Window> WINDOWS = new HashMap<String, Window>();
+
+    private JoinCoalescer() {}
+
+    /**
+     * Schedules the join project with a quiet period lasting until the coalescing window closes. While the join
+     * build is queued, firings of other split builds with equivalent parameters are folded into it by the queue,
+     * adding their causes; once it has started, a later firing schedules a join build of its own.
+     */
+    static void schedule(JoinAction joinAction, Run<?,?> splitBuild, AbstractProject<?,?> joinProject,
+            List<Action> actions, TaskListener listener) {
+        String key = key(splitBuild.getParent().getFullName(), joinProject.getFullName(), actions);
+        long closesAt = open(key, joinAction.getCoalesceWindow() * 1000L);
+        int quietPeriod = Math.max(joinProject.getQuietPeriod(),
+                (int) TimeUnit.MILLISECONDS.toSeconds(closesAt - clock.now() + 999));
+        List<Action> queueActions = new ArrayList<Action>(actions);
+        queueActions.add(new CauseAction(joinAction.new JoinCause(splitBuild)));
+        Queue.ScheduleResult result = Jenkins.getInstance().getQueue().schedule2(joinProject, quietPeriod, queueActions);
+        if (!result.isAccepted()) {
+            listener.getLogger().println("[Join] Join project " + joinProject.getFullDisplayName() + " was not scheduled");
+            return;
+        }
+        JoinAction firstAction = scheduled(key, joinAction, splitBuild.getFullDisplayName(),
+                result.getItem().getId(), result.isCreated());
+        if (firstAction == null) {
+            listener.getLogger().println("[Join] Scheduled join project " + joinProject.getFullDisplayName()
+                    + ", merging further firings until it starts");
+            return;
+        }
+        joinAction.coalesced(splitBuild, firstAction, listener);
+    }
+
+    /**
+     * Opens the window for the key unless it is already open.
+     *
+     * @return the time the window closes.
+     */
+    static synchronized long open(String key, long windowMillis) {
+        final long now = clock.now();
+        expire(now);
+        Window window = WINDOWS.get(key);
+        if (window == null) {
+            window = new Window(null, now + windowMillis);
+            WINDOWS.put(key, window);
+        }
+        return window.closesAt;
+    }
+
+    /**
+     * Records that a join firing has been scheduled as the queue item with the given id.
+     *
+     * @param created whether the queue created a new item or folded the firing into an existing one.
+     * @return null if the firing scheduled its own join build, otherwise the join action which scheduled the queued
+     * join build this firing has been merged into.
+     */
+    static synchronized JoinAction scheduled(String key, JoinAction action, String buildName, long itemId, boolean created) {
+        final Window window = WINDOWS.get(key);
+        if (window == null) {
+            return null;
+        }
+        if (created || window.firstAction == null || window.itemId != itemId) {
+            window.firstAction = action;
+            window.itemId = itemId;
+            return null;
+        }
+        if (window.firstAction == action) {
+            return null;
+        }
+        window.firstAction.recordCoalesced(buildName);
+        return window.firstAction;
+    }
+
+    /**
+     * Closes all windows.
+     */
+    static synchronized void reset() {
+        WINDOWS.clear();
+    }
+
+    private static void expire(long now) {
+        for (Iterator<Window> it = WINDOWS.values().iterator(); it.hasNext();) {
+            if (it.next().closesAt <= now) {
+                it.remove();
+            }
+        }
+    }
+
+    /**
+     * Key identifying a join firing of the given split project towards the given target with the parameters
+     * contained in the actions.
+     */
+    static String key(String splitProject, String target, List<? extends Action> actions) {
+        StringBuilder key = new StringBuilder(splitProject).append("->").append(target);
+        if (actions != null) {
+            for (Action action : actions) {
+                if (action instanceof ParametersAction) {
+                    key.append('|').append(parametersKey((ParametersAction) action));
+                }
+            }
+        }
+        return key.toString();
+    }
+
+    /**
+     * Order independent representation of the parameter values, used to compare parameters for equivalence.
+     */
+    static String parametersKey(ParametersAction parameters) {
+        List<String> values = new ArrayList<String>();
+        for (ParameterValue value : parameters.getParameters()) {
+            values.add(value.getName() + "=" + value.getValue());
+        }
+        Collections.sort(values);
+        return values.toString();
+    }
+
+    private static final class Window {
+        private JoinAction firstAction;
+        private long itemId = -1;
+        private final long closesAt;
+
+        Window(JoinAction firstAction, long closesAt) {
+            this.firstAction = firstAction;
+            this.closesAt = closesAt;
+        }
+    }
+}
@@ -0,0 +1,236 @@
+package join;
+
+import hudson.model.AbstractBuild;
+import hudson.model.AbstractProject;
+import hudson.model.Action;
+import hudson.model.Cause;
+import hudson.model.Cause.UpstreamCause;
+import hudson.model.DependencyGraph;
+import hudson.model.Job;
+import hudson.model.Run;
+import hudson.model.TaskListener;
+import jenkins.model.Jenkins;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Logger;
+
+/**
+ * Single path by which the completion of a build reaches the joins waiting for it.
+ * <p>
+ * A completed build is seen both by {@link JoinTrigger.DescriptorImpl.RunListenerImpl} and by every
+ * {@link JoinDependency} going out of its project. The first of them resolves the split builds of the completed
+ * build and notifies their {@link JoinAction}s, later ones reuse the outcome.
+ */
+final class JoinCompletionDispatcher {
+    private static final Logger LOGGER = Logger.getLogger(JoinCompletionDispatcher.class.getName());
+
+    /**
+     * Number of completed builds whose dispatch outcome is remembered. The outcome is only needed while the build
+     * is finishing, so the least recently dispatched builds are forgotten.
+     */
+    static int MEMO_SIZE = Integer.getInteger(JoinCompletionDispatcher.class.getName() + ".memoSize", 1000);
+
+    /**
+     * Dispatch outcomes by the externalizable id of the completed build. Keyed by id rather than by the build, since
+     * the outcome references the build itself.
+     */
+    private static final Map<String, List<SplitBuildState>> DISPATCHED =
+            new LinkedHashMap<String, List<SplitBuildState>>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, List<SplitBuildState>> eldest) {
+                    return size() > MEMO_SIZE;
+                }
+            };
+
+    private JoinCompletionDispatcher() {}
+
+    /**
+     * Notifies all joins waiting for the completed build, unless this already happened.
+     *
+     * @return the state of every split build the completed build belongs to.
+     */
+    static List<SplitBuildState> dispatch(AbstractBuild<?,?> build, TaskListener listener) {
+        String id = build.getExternalizableId();
+        synchronized (DISPATCHED) {
+            List<SplitBuildState> states = DISPATCHED.get(id);
+            if (states != null) {
+                return states;
+            }
+        }
+        List<SplitBuildState> states = Collections.unmodifiableList(notifySplitBuilds(build, listener));
+        synchronized (DISPATCHED) {
+            List<SplitBuildState> existing = DISPATCHED.get(id);
+            if (existing != null) {
+                return existing;
+            }
+            DISPATCHED.put(id, states);
+        }
+        return states;
+    }
+
+    /**
+     * @return the state of the split build of the given project the completed build belongs to, or null if there is
+     * none.
+     */
+    static SplitBuildState dispatch(AbstractBuild<?,?> build, AbstractProject<?,?> splitProject, TaskListener listener) {
+        for (SplitBuildState state : dispatch(build, listener)) {
+            if (state.splitBuild.getParent().getFullName().equals(splitProject.getFullName())) {
+                return state;
+            }
+        }
+        return null;
+    }
+
+    private static List<SplitBuildState> notifySplitBuilds(AbstractBuild<?,?> build, TaskListener listener) {
+        // the build has to be expected by the joins before its completion is recorded
+        JoinQueueListener.applyPending();
+        List<SplitBuildState> states = new ArrayList<SplitBuildState>();
+        // If there is no intermediate project the split build is completed itself
+        JoinAction ownAction = build.getAction(JoinAction.class);
+        if (ownAction != null) {
+            states.add(new SplitBuildState(build, ownAction, ownAction.isComplete()));
+        }
+        for (Run<?,?> splitBuild : getUpstreamBuilds(build, listener)) {
+            JoinAction joinAction = JoinAction.of(splitBuild);
+            if (joinAction == null) {
+                // does not go in the build log, since this is normal for any downstream project that
+                // runs without the join plugin enabled
+                LOGGER.finer("Join notifier cannot find upstream JoinAction: " + splitBuild);
+                continue;
+            }
+            listener.getLogger().println("Notifying upstream of completion: " + splitBuild.getFullDisplayName());
+            boolean complete = joinAction.downstreamFinished(splitBuild, build, listener);
+            states.add(new SplitBuildState(splitBuild, joinAction, complete));
+        }
+        return states;
+    }
+
+    /**
+     * Triggers the join projects for the split builds completed by the build, if its project has no
+     * {@link JoinDependency} in the dependency graph. This is the case for downstream projects registered while the
+     * split build was running, see {@link JoinAction#registerPendingDownstream}.
+     */
+    static void triggerUndeclaredJoins(AbstractBuild<?,?> build, TaskListener listener) {
+        DependencyGraph graph = Jenkins.getInstance().getDependencyGraph();
+        for (SplitBuildState state : dispatch(build, listener)) {
+            if (!state.complete || state.splitBuild == build || !(state.splitBuild instanceof AbstractBuild)) {
+                continue;
+            }
+            AbstractProject<?,?> splitProject = ((AbstractBuild<?,?>) state.splitBuild).getProject();
+            if (!getJoinDependencies(graph, build.getProject(), splitProject).isEmpty()) {
+                // already triggered by the dependency graph
+                continue;
+            }
+            triggerJoinProjects((AbstractBuild<?,?>) state.splitBuild, state.joinAction,
+                    new UpstreamCause((Run<?,?>) build), listener);
+        }
+    }
+
+    /**
+     * Triggers the join projects of a split build whose join is complete, like its join dependencies would.
+     */
+    static void triggerJoinProjects(AbstractBuild<?,?> splitBuild, JoinAction joinAction, Cause cause,
+            TaskListener listener) {
+        DependencyGraph graph = Jenkins.getInstance().getDependencyGraph();
+        for (JoinDependency<?> dependency : getJoinDependencies(graph, splitBuild.getProject())) {
+            List<Action> actions = new ArrayList<Action>();
+            if (dependency.shouldTriggerJoin(splitBuild, joinAction, true, listener, actions)) {
+                AbstractProject<?,?> joinProject = dependency.getDownstreamProject();
+                listener.getLogger().println("Triggering join project " + joinProject.getFullDisplayName());
+                joinProject.scheduleBuild(joinProject.getQuietPeriod(), cause, actions.toArray(new Action[actions.size()]));
+            }
+        }
+    }
+
+    /**
+     * @return the join dependencies declared by the split project, taken from one of its downstream projects.
+     */
+    private static List<JoinDependency<?>> getJoinDependencies(DependencyGraph graph, AbstractProject<?,?> splitProject) {
+        List<AbstractProject> candidates = new ArrayList<AbstractProject>(graph.getDownstream(splitProject));
+        candidates.add(splitProject);
+        for (AbstractProject<?,?> candidate : candidates) {
+            List<JoinDependency<?>> dependencies = getJoinDependencies(graph, candidate, splitProject);
+            if (!dependencies.isEmpty()) {
+                return dependencies;
+            }
+        }
+        return Collections.emptyList();
+    }
+
+    private static List<JoinDependency<?>> getJoinDependencies(DependencyGraph graph, AbstractProject<?,?> upstream,
+            AbstractProject<?,?> splitProject) {
+        List<JoinDependency<?>> dependencies = new ArrayList<JoinDependency<?>>();
+        for (DependencyGraph.Dependency dependency : graph.getDownstreamDependencies(upstream)) {
+            if (dependency instanceof JoinDependency && ((JoinDependency<?>) dependency).isFromSplitProject(splitProject)) {
+                dependencies.add((JoinDependency<?>) dependency);
+            }
+        }
+        return dependencies;
+    }
+
+    /**
+     * @return the builds the build was triggered by. A build which registered downstream projects with the join of
+     * a split build stands for that split build.
+     */
+    static List<Run<?,?>> getUpstreamBuilds(AbstractBuild<?,?> build, TaskListener listener) {
+        return getUpstreamBuilds(build.getCauses(), listener);
+    }
+
+    /**
+     * @return the builds the given causes refer to, see {@link #getUpstreamBuilds(AbstractBuild, TaskListener)}.
+     */
+    static List<Run<?,?>> getUpstreamBuilds(List<Cause> causes, TaskListener listener) {
+        List<Run<?,?>> upstreamBuilds = new ArrayList<Run<?,?>>();
+        for (Cause cause : causes) {
+            if (!(cause instanceof UpstreamCause) || cause instanceof JoinAction.JoinCause) {
+                continue;
+            }
+            UpstreamCause uc = (UpstreamCause) cause;
+            String upstreamProjectName = uc.getUpstreamProject();
+            Job<?,?> upstreamProject = Jenkins.getInstance().getItemByFullName(upstreamProjectName, Job.class);
+            if (upstreamProject == null) {
+                listener.getLogger().println("Join notifier cannot find upstream project: " + upstreamProjectName);
+                continue;
+            }
+            Run<?,?> upstreamRun = upstreamProject.getBuildByNumber(uc.getUpstreamBuild());
+            if (upstreamRun == null) {
+                listener.getLogger().println("Join notifier cannot find upstream run: " + upstreamProjectName + " number " + uc.getUpstreamBuild());
+                continue;
+            }
+            List<JoinRegistrationBuilder.RegisteredWith> links = upstreamRun.getActions(JoinRegistrationBuilder.RegisteredWith.class);
+            if (upstreamRun.getAction(JoinAction.class) == null && !links.isEmpty()) {
+                for (JoinRegistrationBuilder.RegisteredWith link : links) {
+                    Run<?,?> splitBuild = link.getSplitBuild();
+                    if (splitBuild != null && !upstreamBuilds.contains(splitBuild)) {
+                        upstreamBuilds.add(splitBuild);
+                    }
+                }
+                continue;
+            }
+            if (!upstreamBuilds.contains(upstreamRun)) {
+                upstreamBuilds.add(upstreamRun);
+            }
+        }
+        return upstreamBuilds;
+    }
+
+    /**
+     * The join state of a split build as seen by the completion of one of its downstream builds.
+     */
+    static final class SplitBuildState {
+        final Run<?,?> splitBuild;
+        final JoinAction joinAction;
+        /** Whether no downstream build was pending anymore after the completion. */
+        final boolean complete;
+
+        SplitBuildState(Run<?,?> splitBuild, JoinAction joinAction, boolean complete) {
+            this.splitBuild = splitBuild;
+            this.joinAction = joinAction;
+            this.complete = complete;
+        }
+    }
+}
@@ -0,0 +1,127 @@
+package join;
+
+import hudson.model.AbstractBuild;
+import hudson.model.Result;
+
+import java.util.Properties;
+
+/**
+ * Completion of a downstream build sent to the controller running its split build, see
+ * {@link JoinCompletionTransport}.
+ */
+public final class JoinCompletionEvent {
+    private final String splitBuild;
+    private final String origin;
+    private final String projectName;
+    private final int buildNumber;
+    private final Result result;
+    private final long startedAt;
+    private final long duration;
+
+    /**
+     * @param splitBuild reference to the split build, see {@link JoinCompletionTransport#reference}
+     * @param origin name of the controller the downstream build ran on
+     */
+    public JoinCompletionEvent(String splitBuild, String origin, String projectName, int buildNumber, Result result,
+            long startedAt, long duration) {
+        this.splitBuild = splitBuild;
+        this.origin = origin;
+        this.projectName = projectName;
+        this.buildNumber = buildNumber;
+        this.result = result;
+        this.startedAt = startedAt;
+        this.duration = duration;
+    }
+
+    static JoinCompletionEvent of(String splitBuild, AbstractBuild<?,?> build) {
+        return new JoinCompletionEvent(splitBuild, JoinCompletionTransport.getControllerName(),
+                build.getProject().getFullName(), build.getNumber(), build.getResult(), build.getStartTimeInMillis(),
+                build.getDuration());
+    }
+
+    /**
+     * Unique id of the event, the same downstream build always sends the same id.
+     */
+    public String getId() {
+        return origin + ":" + projectName + " #" + buildNumber;
+    }
+
+    /**
+     * Id of the downstream build as considered by the join. Builds of the controller running the split build use the
+     * same id as when notified locally, so they are only considered once.
+     */
+    String getBuildId() {
+        String buildId = projectName + " #" + buildNumber;
+        return origin.equals(getController()) ? buildId : origin + ":" + buildId;
+    }
+
+    /**
+     * Name of the controller running the split build.
+     */
+    public String getController() {
+        int separator = splitBuild.indexOf('|');
+        return separator < 0 ? "" : splitBuild.substring(0, separator);
+    }
+
+    /**
+     * Externalizable id of the split build on its controller.
+     */
+    public String getSplitBuildId() {
+        return splitBuild.substring(splitBuild.indexOf('|') + 1);
+    }
+
+    public String getSplitBuild() {
+        return splitBuild;
+    }
+
+    public String getOrigin() {
+        return origin;
+    }
+
+    public String getProjectName() {
+        return projectName;
+    }
+
+    public int getBuildNumber() {
+        return buildNumber;
+    }
+
+    public Result getResult() {
+        return result;
+    }
+
+    public long getStartedAt() {
+        return startedAt;
+    }
+
+    public long getDuration() {
+        return duration;
+    }
+
+    Properties toProperties() {
+        Properties properties = new Properties();
+        properties.setProperty("splitBuild", splitBuild);
+        properties.setProperty("origin", origin);
+        properties.setProperty("project", projectName);
+        properties.setProperty("number", String.valueOf(buildNumber));
+        properties.setProperty("result", String.valueOf(result));
+        properties.setProperty("startedAt", String.valueOf(startedAt));
+        properties.setProperty("duration", String.valueOf(duration));
+        return properties;
+    }
+
+    static JoinCompletionEvent fromProperties(Properties properties) {
+        return new JoinCompletionEvent(properties.getProperty("splitBuild"),
+                properties.getProperty("origin"),
+                properties.getProperty("project"),
+                Integer.parseInt(properties.getProperty("number", "0")),
+                Result.fromString(properties.getProperty("result", "FAILURE")),
+                Long.parseLong(properties.getProperty("startedAt", "0")),
+                Long.parseLong(properties.getProperty("duration", "0")));
+    }
+
+    @Override
+    public String toString() {
+        return getId() + " for " + splitBuild;
+    }
+}
@@ -0,0 +1,44 @@
+package join;
+
+import hudson.ExtensionList;
+import hudson.ExtensionPoint;
+import hudson.model.Run;
+import jenkins.model.Jenkins;
+
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Receives the joins which fired, i.e. found all of their downstream builds complete.
+ * <p>
+ * Called from the thread completing the join, so implementations should hand off any long running work.
+ */
+public abstract class JoinCompletionListener implements ExtensionPoint {
+    private static final Logger LOGGER = Logger.getLogger(JoinCompletionListener.class.getName());
+
+    /**
+     * @param splitBuild the build the join belongs to
+     * @param joinAction the join which fired, see {@link JoinAction#getOverallResult()}
+     */
+    public abstract void onFired(Run<?,?> splitBuild, JoinAction joinAction);
+
+    public static ExtensionList<JoinCompletionListener> all() {
+        return Jenkins.getInstance().getExtensionList(JoinCompletionListener.class);
+    }
+
+    static void fireFired(Run<?,?> splitBuild, JoinAction joinAction) {
+        if (Jenkins.getInstance() == null) {
+            return;
+        }
+        for (JoinCompletionListener listener : all()) {
+            try {
+                listener.onFired(splitBuild, joinAction);
+            } catch (RuntimeException e) {
+                LOGGER.log(Level.WARNING, "Join completion listener " + listener + " failed for " + splitBuild, e);
+            } catch (LinkageError e) {
+                // e.g. a listener referring to an optional plugin which is not installed
+                LOGGER.log(Level.WARNING, "Join completion listener " + listener + " failed for " + splitBuild, e);
+            }
+        }
+    }
+}
@@ -0,0 +1,95 @@
+package join;
+
+import hudson.model.TaskListener;
+import hudson.util.LogTaskListener;
+import jenkins.util.Timer;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Queues the {@link JoinCompletionEvent}s of a split build, so a burst of completions is applied to its join in
+ * batches instead of one by one.
+ * <p>
+ * The thread submitting an event drains the queue of the split build unless another thread already does, which
+ * then picks up the event with the rest of its batch. Events for a running split build which did not arm its join
+ * yet stay queued and are applied again after {@link #RETRY_DELAY}.
+ */
+final class JoinCompletionQueue {
+    private static final Logger LOGGER = Logger.getLogger(JoinCompletionQueue.class.getName());
+
+    static long RETRY_DELAY = Long.getLong(JoinCompletionQueue.class.getName() + ".retryDelay", 1000L);
+
+    private static final ConcurrentMap<String, Batch> BATCHES = new ConcurrentHashMap<String, Batch>();
+
+    private JoinCompletionQueue() {
+    }
+
+    static void submit(JoinCompletionEvent event, TaskListener listener) {
+        String splitBuildId = event.getSplitBuildId();
+        Batch batch = BATCHES.get(splitBuildId);
+        if (batch == null) {
+            Batch created = new Batch();
+            batch = BATCHES.putIfAbsent(splitBuildId, created);
+            if (batch == null) {
+                batch = created;
+            }
+        }
+        batch.events.add(event);
+        drain(splitBuildId, batch, listener);
+    }
+
+    private static void drain(String splitBuildId, Batch batch, TaskListener listener) {
+        while (!batch.events.isEmpty() && batch.draining.compareAndSet(false, true)) {
+            try {
+                List<JoinCompletionEvent> events = new ArrayList<JoinCompletionEvent>();
+                for (JoinCompletionEvent queued; (queued = batch.events.poll()) != null;) {
+                    events.add(queued);
+                }
+                if (!JoinCompletionReceiver.apply(splitBuildId, events, listener)) {
+                    batch.events.addAll(events);
+                    scheduleRetry(splitBuildId, batch);
+                    return;
+                }
+            } finally {
+                batch.draining.set(false);
+            }
+        }
+        // events added to a removed batch are drained by the thread adding them
+        if (batch.events.isEmpty()) {
+            BATCHES.remove(splitBuildId, batch);
+        }
+    }
+
+    /**
+     * Applies the events of the batch again later, since the split build did not arm its join yet. The thread which
+     * submitted them is done with them by then, so the output of the join goes to the log instead.
+     */
+    private static void scheduleRetry(final String splitBuildId, final Batch batch) {
+        if (!batch.retryScheduled.compareAndSet(false, true)) {
+            return;
+        }
+        LOGGER.log(Level.FINE, "Keeping {0} join completions until {1} arms its join",
+                new Object[] {batch.events.size(), splitBuildId});
+        Timer.get().schedule(new Runnable() {
+            public void run() {
+                batch.retryScheduled.set(false);
+                drain(splitBuildId, batch, new LogTaskListener(LOGGER, Level.INFO));
+            }
+        }, RETRY_DELAY, TimeUnit.MILLISECONDS);
+    }
+
+    private static final class Batch {
+        private final Queue<JoinCompletionEvent> events = new ConcurrentLinkedQueue<JoinCompletionEvent>();
+        private final AtomicBoolean draining = new AtomicBoolean();
+        private final AtomicBoolean retryScheduled = new AtomicBoolean();
+    }
+}
@@ -0,0 +1,134 @@
+package join;
+
+import hudson.Extension;
+import hudson.model.AbstractBuild;
+import hudson.model.AsyncPeriodicWork;
+import hudson.model.BuildListener;
+import hudson.model.Run;
+import hudson.model.StreamBuildListener;
+import hudson.model.TaskListener;
+import org.apache.commons.io.IOUtils;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Applies the {@link JoinCompletionEvent}s sent to this controller to the joins of their split builds.
+ */
+@Extension
+public class JoinCompletionReceiver extends AsyncPeriodicWork {
+    private static final Logger LOGGER = Logger.getLogger(JoinCompletionReceiver.class.getName());
+
+    public static long RECURRENCE_PERIOD = Long.getLong(JoinCompletionReceiver.class.getName() + ".recurrencePeriod", 5000L);
+    public static int BATCH_SIZE = Integer.getInteger(JoinCompletionReceiver.class.getName() + ".batchSize", 500);
+
+    public JoinCompletionReceiver() {
+        super("Join completion receiver");
+    }
+
+    @Override
+    public long getRecurrencePeriod() {
+        return RECURRENCE_PERIOD;
+    }
+
+    @Override
+    protected void execute(TaskListener listener) throws IOException, InterruptedException {
+        drain(listener);
+    }
+
+    /**
+     * Applies one batch of the events of every enabled transport, grouped by split build.
+     */
+    static void drain(TaskListener listener) throws IOException {
+        for (JoinCompletionTransport transport : JoinCompletionTransport.all()) {
+            if (!transport.isEnabled()) {
+                continue;
+            }
+            transport.prune();
+            Map<String, List<JoinCompletionEvent>> bySplitBuild = new LinkedHashMap<String, List<JoinCompletionEvent>>();
+            for (JoinCompletionEvent event : transport.receive(BATCH_SIZE)) {
+                List<JoinCompletionEvent> events = bySplitBuild.get(event.getSplitBuildId());
+                if (events == null) {
+                    events = new ArrayList<JoinCompletionEvent>();
+                    bySplitBuild.put(event.getSplitBuildId(), events);
+                }
+                events.add(event);
+            }
+            for (Map.Entry<String, List<JoinCompletionEvent>> entry : bySplitBuild.entrySet()) {
+                if (apply(entry.getKey(), entry.getValue(), listener)) {
+                    for (JoinCompletionEvent event : entry.getValue()) {
+                        transport.acknowledge(event);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Applies the events of one split build to its join at once.
+     *
+     * @return whether the events are done with, i.e. they were applied, dropped or their split build is gone
+     */
+    static boolean apply(String splitBuildId, List<JoinCompletionEvent> events, TaskListener listener) {
+        Run<?,?> splitBuild = Run.fromExternalizableId(splitBuildId);
+        if (splitBuild == null) {
+            LOGGER.log(Level.WARNING, "Dropping {0} join completions, the split build {1} does not exist",
+                    new Object[] {events.size(), splitBuildId});
+            return true;
+        }
+        JoinAction joinAction = JoinAction.of(splitBuild);
+        if (joinAction == null) {
+            if (splitBuild.isBuilding()) {
+                // the split build did not arm its join yet, keep the events until it does
+                return false;
+            }
+            LOGGER.log(Level.WARNING, "Dropping {0} join completions, the split build {1} has no join",
+                    new Object[] {events.size(), splitBuild});
+            return true;
+        }
+        List<JoinCompletionEvent> expected = new ArrayList<JoinCompletionEvent>();
+        for (JoinCompletionEvent event : events) {
+            if (joinAction.expects(event.getProjectName())) {
+                expected.add(event);
+            } else {
+                // see the trust boundary described in JoinCompletionTransport
+                LOGGER.log(Level.WARNING, "Dropping join completion {0}, {1} does not wait for {2}",
+                        new Object[] {event.getId(), splitBuild, event.getProjectName()});
+            }
+        }
+        if (expected.isEmpty()) {
+            return true;
+        }
+        OutputStream log = null;
+        BuildListener buildListener = null;
+        if (!splitBuild.isBuilding()) {
+            // the output of the join, e.g. of its publishers, goes to the log of the finished split build
+            try {
+                log = new FileOutputStream(splitBuild.getLogFile(), true);
+                buildListener = new StreamBuildListener(log, splitBuild.getCharset());
+            } catch (IOException e) {
+                LOGGER.log(Level.WARNING, "Unable to append to the log of " + splitBuild, e);
+            }
+        }
+        if (buildListener == null) {
+            buildListener = new StreamBuildListener(listener.getLogger(), Charset.defaultCharset());
+        }
+        try {
+            if (joinAction.downstreamFinished(splitBuild, expected, buildListener) && splitBuild instanceof AbstractBuild) {
+                JoinCompletionDispatcher.triggerJoinProjects((AbstractBuild<?,?>) splitBuild, joinAction,
+                        joinAction.new JoinCause(splitBuild), buildListener);
+            }
+        } finally {
+            IOUtils.closeQuietly(log);
+        }
+        return true;
+    }
+}
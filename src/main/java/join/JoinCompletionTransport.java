@@ -0,0 +1,154 @@
+package join;
+
+import hudson.EnvVars;
+import hudson.Extension;
+import hudson.ExtensionList;
+import hudson.ExtensionPoint;
+import hudson.model.AbstractBuild;
+import hudson.model.EnvironmentContributor;
+import hudson.model.Run;
+import hudson.model.TaskListener;
+import hudson.model.listeners.RunListener;
+import jenkins.model.Jenkins;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Carries completions of downstream builds to the controller running their split build, so a split build can join
+ * on downstream builds running on other controllers.
+ * <p>
+ * Split builds expose a reference to themselves as {@value #SPLIT_BUILD_PARAMETER}. A downstream build which has
+ * this variable, usually passed on as a build parameter, sends a {@link JoinCompletionEvent} on completion, and the
+ * {@link JoinCompletionReceiver} of the controller of the split build applies it to the join. The projects running
+ * elsewhere are registered with the join using {@link JoinRegistrationBuilder} and the <code>remote:</code> prefix.
+ * <p>
+ * Delivery needs to be at least once: every event has a stable {@link JoinCompletionEvent#getId() id}, the join
+ * considers every downstream build only once and events are only {@link #acknowledge acknowledged} after they were
+ * applied.
+ * <p>
+ * Events are not authenticated: whoever can send to the transport, or set {@value #SPLIT_BUILD_PARAMETER} on a build
+ * of a forwarding controller, can report completions for any split build it knows the reference of. The receiver
+ * therefore only applies events for downstream projects the split build waits for or registered, and drops the
+ * others; who may write to the transport itself, e.g. to the spool directory, is up to its setup.
+ */
+public abstract class JoinCompletionTransport implements ExtensionPoint {
+    public static final String SPLIT_BUILD_PARAMETER = "JOIN_SPLIT_BUILD";
+
+    private static final Logger LOGGER = Logger.getLogger(JoinCompletionTransport.class.getName());
+
+    /**
+     * @return whether the transport is configured
+     */
+    public abstract boolean isEnabled();
+
+    /**
+     * Sends the event to the controller {@link JoinCompletionEvent#getController() running the split build}.
+     * Sending the same event again must not deliver it twice once it was acknowledged.
+     */
+    public abstract void send(JoinCompletionEvent event) throws IOException;
+
+    /**
+     * @return up to <code>max</code> events sent to this controller which are not acknowledged yet
+     */
+    public abstract List<JoinCompletionEvent> receive(int max) throws IOException;
+
+    /**
+     * Marks the event as applied, so it is neither received nor delivered again.
+     */
+    public abstract void acknowledge(JoinCompletionEvent event) throws IOException;
+
+    /**
+     * Drops what the transport keeps to stop acknowledged events from being delivered again, once the events are too
+     * old to be sent again. Called periodically by the {@link JoinCompletionReceiver}.
+     */
+    public void prune() throws IOException {
+    }
+
+    public static ExtensionList<JoinCompletionTransport> all() {
+        return Jenkins.getInstance().getExtensionList(JoinCompletionTransport.class);
+    }
+
+    /**
+     * Name of this controller, <code>join.controller</code> if set and the instance id otherwise.
+     */
+    public static String getControllerName() {
+        String name = System.getProperty("join.controller");
+        return name != null ? name : Jenkins.getInstance().getLegacyInstanceId();
+    }
+
+    /**
+     * @return the value of {@value #SPLIT_BUILD_PARAMETER} for the split build
+     */
+    public static String reference(Run<?,?> splitBuild) {
+        return getControllerName() + "|" + splitBuild.getExternalizableId();
+    }
+
+    /**
+     * Sends the completion of a downstream build to the join of its split build.
+     */
+    static void forward(AbstractBuild<?,?> build, TaskListener listener) {
+        String reference = build.getBuildVariables().get(SPLIT_BUILD_PARAMETER);
+        if (reference == null || reference.indexOf('|') < 0) {
+            return;
+        }
+        JoinCompletionEvent event = JoinCompletionEvent.of(reference, build);
+        if (event.getController().equals(getControllerName())) {
+            // builds triggered by the split build are joined through their causes already
+            Run<?,?> splitBuild = Run.fromExternalizableId(event.getSplitBuildId());
+            if (!JoinCompletionDispatcher.getUpstreamBuilds(build, listener).contains(splitBuild)) {
+                JoinCompletionQueue.submit(event, listener);
+            }
+            return;
+        }
+        boolean sent = false;
+        for (JoinCompletionTransport transport : all()) {
+            if (!transport.isEnabled()) {
+                continue;
+            }
+            try {
+                transport.send(event);
+                sent = true;
+            } catch (IOException e) {
+                LOGGER.log(Level.WARNING, "Failed to send " + event, e);
+            }
+        }
+        listener.getLogger().println(sent
+                ? "[Join] Sent completion to the join of " + reference
+                : "[Join] No completion transport configured to reach " + event.getController());
+    }
+
+    @Extension
+    public static class RunListenerImpl extends RunListener<Run> {
+        public RunListenerImpl() {
+            super(Run.class);
+        }
+
+        @Override
+        public void onCompleted(Run run, TaskListener listener) {
+            if (run instanceof AbstractBuild) {
+                forward((AbstractBuild<?,?>) run, listener);
+            }
+        }
+    }
+
+    /**
+     * Exposes {@value #SPLIT_BUILD_PARAMETER} to split builds.
+     */
+    @Extension
+    public static class EnvironmentContributorImpl extends EnvironmentContributor {
+        @Override
+        public void buildEnvironmentFor(Run r, EnvVars envs, TaskListener listener) {
+            if (!(r instanceof AbstractBuild) || envs.containsKey(SPLIT_BUILD_PARAMETER)) {
+                return;
+            }
+            AbstractBuild<?,?> build = (AbstractBuild<?,?>) r;
+            if (build.getAction(JoinAction.class) != null
+                    || build.getProject().getPublishersList().get(JoinTrigger.class) != null) {
+                envs.put(SPLIT_BUILD_PARAMETER, reference(build));
+            }
+        }
+    }
+}
@@ -0,0 +1,266 @@
+package join;
+
+import hudson.Extension;
+import hudson.Util;
+import hudson.XmlFile;
+import hudson.model.AsyncPeriodicWork;
+import hudson.model.Descriptor;
+import hudson.model.Job;
+import hudson.model.Result;
+import hudson.model.TaskListener;
+import hudson.security.ACL;
+import hudson.tasks.Publisher;
+import hudson.util.DescribableList;
+import jenkins.model.Jenkins;
+import org.acegisecurity.context.SecurityContext;
+import org.acegisecurity.context.SecurityContextHolder;
+import org.apache.commons.io.FileUtils;
+
+import java.io.File;
+import java.io.FileFilter;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Stores the join configuration copied into split builds once per distinct content, in
+ * <code>$JENKINS_HOME/join-configs/&lt;digest&gt;.xml</code>, and shares recently used configurations in memory.
+ * Stored configurations no build refers to anymore are deleted by the {@link OrphanSweeper}.
+ */
+final class JoinConfigStore {
+    private static final Logger LOGGER = Logger.getLogger(JoinConfigStore.class.getName());
+
+    /**
+     * Number of configurations kept in memory. Split builds keep the configuration they use themselves, so this
+     * only limits how many loaded builds share one instance.
+     */
+    static int CACHE_SIZE = Integer.getInteger(JoinConfigStore.class.getName() + ".cacheSize", 100);
+
+    /**
+     * Hours a stored configuration is kept after it was last stored, even if no build refers to it yet.
+     */
+    static int ORPHAN_GRACE = Integer.getInteger(JoinConfigStore.class.getName() + ".orphanGrace", 24);
+
+    private static final Pattern DIGEST_REFERENCE = Pattern.compile("<configDigest>([0-9a-f]+)</configDigest>");
+
+    private static final Map<String, Snapshot> SNAPSHOTS = new LinkedHashMap<String, Snapshot>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Snapshot> eldest) {
+            return size() > CACHE_SIZE;
+        }
+    };
+
+    /**
+     * Digests of configurations that are not snapshots, e.g. the trigger configs captured parameters are kept for.
+     */
+    private static final Map<Object, String> DIGESTS = new WeakHashMap<Object, String>();
+
+    private JoinConfigStore() {}
+
+    /**
+     * Stores the configuration unless an identical one is stored already.
+     *
+     * @return the stored configuration, shared with the builds that stored an identical one
+     */
+    static Snapshot store(DescribableList<Publisher, Descriptor<Publisher>> joinPublishers, Result resultThreshold) throws IOException {
+        Snapshot snapshot = new Snapshot(joinPublishers, resultThreshold);
+        String digest = snapshot.getDigest();
+        synchronized (SNAPSHOTS) {
+            XmlFile file = getFile(digest);
+            if (!file.exists()) {
+                file.write(snapshot);
+            } else if (!file.getFile().setLastModified(System.currentTimeMillis())) {
+                // keeps it from being swept before the build referring to it is saved
+                LOGGER.log(Level.FINE, "Failed to touch {0}", file);
+            }
+            Snapshot shared = SNAPSHOTS.get(digest);
+            if (shared == null) {
+                SNAPSHOTS.put(digest, snapshot);
+                shared = snapshot;
+            }
+            return shared;
+        }
+    }
+
+    /**
+     * @return the configuration stored for the digest, or null if it is missing or cannot be loaded.
+     */
+    static Snapshot load(String digest) {
+        synchronized (SNAPSHOTS) {
+            Snapshot snapshot = SNAPSHOTS.get(digest);
+            if (snapshot == null) {
+                XmlFile file = getFile(digest);
+                if (!file.exists()) {
+                    return null;
+                }
+                try {
+                    snapshot = (Snapshot) file.read();
+                    snapshot.digest = digest;
+                    SNAPSHOTS.put(digest, snapshot);
+                } catch (IOException e) {
+                    LOGGER.log(Level.WARNING, "Failed to load join configuration " + digest, e);
+                }
+            }
+            return snapshot;
+        }
+    }
+
+    /**
+     * Drops the configurations kept in memory.
+     */
+    static void clear() {
+        synchronized (SNAPSHOTS) {
+            SNAPSHOTS.clear();
+        }
+    }
+
+    /**
+     * SHA-1 digest of the XML representation of the given object, identifying configurations by their content.
+     * Computed once per object, which must not change afterwards.
+     */
+    static String digest(Object o) {
+        synchronized (DIGESTS) {
+            String digest = DIGESTS.get(o);
+            if (digest == null) {
+                digest = computeDigest(o);
+                DIGESTS.put(o, digest);
+            }
+            return digest;
+        }
+    }
+
+    private static String computeDigest(Object o) {
+        try {
+            MessageDigest md = MessageDigest.getInstance("SHA-1");
+            return Util.toHexString(md.digest(Jenkins.XSTREAM2.toXML(o).getBytes("UTF-8")));
+        } catch (NoSuchAlgorithmException e) {
+            throw new AssertionError(e);
+        } catch (UnsupportedEncodingException e) {
+            throw new AssertionError(e);
+        }
+    }
+
+    /**
+     * Deletes the stored configurations that no build refers to and that were not stored within the
+     * {@link #ORPHAN_GRACE}.
+     *
+     * @return the number of configurations deleted
+     */
+    static int sweep(long now) throws IOException {
+        final long orphanedBefore = now - TimeUnit.HOURS.toMillis(ORPHAN_GRACE);
+        File[] candidates = getDir().listFiles(new FileFilter() {
+            public boolean accept(File file) {
+                return file.getName().endsWith(".xml") && file.lastModified() < orphanedBefore;
+            }
+        });
+        if (candidates == null || candidates.length == 0) {
+            return 0;
+        }
+        Set<String> referenced = getReferencedDigests();
+        int deleted = 0;
+        synchronized (SNAPSHOTS) {
+            for (File file : candidates) {
+                String digest = file.getName().substring(0, file.getName().length() - ".xml".length());
+                // checked again, as store touches the files it reuses
+                if (!referenced.contains(digest) && !SNAPSHOTS.containsKey(digest)
+                        && file.lastModified() < orphanedBefore) {
+                    Util.deleteFile(file);
+                    deleted++;
+                }
+            }
+        }
+        return deleted;
+    }
+
+    /**
+     * Reads the digests from the <code>build.xml</code> of every build, without loading the builds.
+     */
+    private static Set<String> getReferencedDigests() throws IOException {
+        Set<String> digests = new HashSet<String>();
+        SecurityContext orig = ACL.impersonate(ACL.SYSTEM);
+        try {
+            for (Job<?,?> job : Jenkins.getInstance().getAllItems(Job.class)) {
+                File[] buildDirs = job.getBuildDir().listFiles();
+                if (buildDirs == null) {
+                    continue;
+                }
+                for (File buildDir : buildDirs) {
+                    File buildXml = new File(buildDir, "build.xml");
+                    if (!buildXml.isFile() || Util.isSymlink(buildDir)) {
+                        continue;
+                    }
+                    Matcher matcher = DIGEST_REFERENCE.matcher(FileUtils.readFileToString(buildXml, "UTF-8"));
+                    while (matcher.find()) {
+                        digests.add(matcher.group(1));
+                    }
+                }
+            }
+        } finally {
+            SecurityContextHolder.setContext(orig);
+        }
+        return digests;
+    }
+
+    private static File getDir() {
+        return new File(Jenkins.getInstance().getRootDir(), "join-configs");
+    }
+
+    private static XmlFile getFile(String digest) {
+        return new XmlFile(Jenkins.XSTREAM2, new File(getDir(), digest + ".xml"));
+    }
+
+    /**
+     * The part of the join configuration a split build keeps.
+     */
+    static final class Snapshot {
+        final DescribableList<Publisher, Descriptor<Publisher>> joinPublishers;
+        final Result resultThreshold;
+        private transient String digest;
+
+        Snapshot(DescribableList<Publisher, Descriptor<Publisher>> joinPublishers, Result resultThreshold) {
+            this.joinPublishers = joinPublishers;
+            this.resultThreshold = resultThreshold;
+        }
+
+        String getDigest() {
+            if (digest == null) {
+                digest = computeDigest(this);
+            }
+            return digest;
+        }
+    }
+
+    /**
+     * Deletes the orphaned configurations once a day.
+     */
+    @Extension
+    public static class OrphanSweeper extends AsyncPeriodicWork {
+        public OrphanSweeper() {
+            super("Join configuration cleanup");
+        }
+
+        @Override
+        public long getRecurrencePeriod() {
+            return DAY;
+        }
+
+        @Override
+        protected void execute(TaskListener listener) throws IOException, InterruptedException {
+            int deleted = sweep(System.currentTimeMillis());
+            if (deleted > 0) {
+                listener.getLogger().println("Deleted " + deleted + " orphaned join configurations");
+            }
+        }
+    }
+}
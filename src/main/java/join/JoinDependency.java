@@ -3,10 +3,8 @@ package join;
 import hudson.model.AbstractBuild;
 import hudson.model.AbstractProject;
 import hudson.model.Action;
-import hudson.model.Cause;
 import hudson.model.DependencyGraph;
 import hudson.model.Result;
-import hudson.model.Run;
 import hudson.model.TaskListener;
 
 import java.util.List;
@@ -21,6 +19,11 @@ public class JoinDependency<DEP extends DependencyGraph.Dependency> extends Depe
 
     private AbstractProject<?,?> splitProject;
     protected DEP splitDependency;
+    /**
+     * Keeps the key of an interned edge alive as long as the edge, see {@link JoinEdgeCache}.
+     */
+    JoinEdgeCache.EdgeKey key;
+    private int cachedHash;
 
     JoinDependency(AbstractProject<?, ?> upstream, AbstractProject<?, ?> downstream, AbstractProject<?, ?> splitProject) {
         super(upstream, downstream);
@@ -35,51 +38,57 @@ public class JoinDependency<DEP extends DependencyGraph.Dependency> extends Depe
         return this.splitProject.equals(other.splitProject);
     }
 
+    AbstractProject<?,?> getSplitProject() {
+        return splitProject;
+    }
+
+    boolean isFromSplitProject(AbstractProject<?,?> project) {
+        return this.splitProject.equals(project);
+    }
+
     @Override
     public boolean shouldTriggerBuild(AbstractBuild build, TaskListener listener, List<Action> actions) {
-        AbstractBuild<?,?> splitBuild = getSplitBuild(build);
-        if (splitBuild != null) {
-            final JoinAction joinAction = splitBuild.getAction(JoinAction.class);
-            if(joinAction != null) {
-                listener.getLogger().println("Notifying upstream build " + splitBuild + " of job completion");
-                boolean joinDownstreamFinished = joinAction.downstreamFinished(splitBuild, build, listener);
-                joinDownstreamFinished = joinDownstreamFinished &&
-                        conditionIsMet(joinAction.getOverallResult()) &&
-                            splitDependency.shouldTriggerBuild(splitBuild, listener, actions);
-                return joinDownstreamFinished;
-            }
+        JoinCompletionDispatcher.SplitBuildState state = JoinCompletionDispatcher.dispatch(build, splitProject, listener);
+        if (state == null || !(state.splitBuild instanceof AbstractBuild)) {
+            // does not go in the build log, since this is normal for any downstream project that
+            // runs without the join plugin enabled
+            LOGGER.log(Level.FINER, "Join notifier cannot find split build of {0} for {1}", new Object[] {splitProject, build});
+            return false;
         }
-        // does not go in the build log, since this is normal for any downstream project that
-        // runs without the join plugin enabled
-        LOGGER.log(Level.FINER, "Join notifier cannot find upstream JoinAction: {0}", splitBuild);
-        return false;
+        return shouldTriggerJoin((AbstractBuild<?,?>) state.splitBuild, state.joinAction, state.complete, listener, actions);
     }
 
-    private AbstractBuild<?,?> getSplitBuild(AbstractBuild<?,?> build) {
-        final List<Cause> causes = build.getCauses();
-        AbstractBuild<?,?> splitBuild = null;
-        // If there is no intermediate project this will happen
-        if (splitProject.getFullName().equals(build.getProject().getFullName())) {
-            splitBuild = build;
+    /**
+     * Decides whether the join project is triggered for the split build, given whether its join is complete.
+     */
+    boolean shouldTriggerJoin(AbstractBuild<?,?> splitBuild, JoinAction joinAction, boolean complete,
+            TaskListener listener, List<Action> actions) {
+        boolean joinDownstreamFinished = complete &&
+                conditionIsMet(joinAction.getOverallResult()) &&
+                    splitDependencyShouldTriggerBuild(splitBuild, joinAction, listener, actions);
+        if (!joinDownstreamFinished) {
+            return false;
         }
-        for (Cause cause : causes) {
-            if (cause instanceof JoinAction.JoinCause) {
-                continue;
-            }
-            if (cause instanceof Cause.UpstreamCause) {
-                Cause.UpstreamCause uc = (Cause.UpstreamCause) cause;
-                final int upstreamBuildNum = uc.getUpstreamBuild();
-                final String upstreamProject = uc.getUpstreamProject();
-                if (splitProject.getFullName().equals(upstreamProject)) {
-                    final Run<?,?> upstreamRun = splitProject.getBuildByNumber(upstreamBuildNum);
-                    if (upstreamRun instanceof AbstractBuild<?,?>) {
-                        splitBuild = (AbstractBuild<?,?>) upstreamRun;
-                        break;
-                    }
-                }
-            }
+        if (!joinAction.markJoinTriggered(getDownstreamProject().getFullName())) {
+            listener.getLogger().println("[Join] Join project " + getDownstreamProject().getFullDisplayName()
+                    + " was already triggered for " + splitBuild.getFullDisplayName());
+            return false;
         }
-        return splitBuild;
+        joinAction.addAggregatedParameters(actions);
+        if (joinAction.getCoalesceWindow() > 0) {
+            JoinCoalescer.schedule(joinAction, splitBuild, getDownstreamProject(), actions, listener);
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Decides whether the join project is triggered for the split build as if it was triggered by the split build
+     * directly, adding the actions for the join build.
+     */
+    protected boolean splitDependencyShouldTriggerBuild(AbstractBuild<?,?> splitBuild, JoinAction joinAction,
+            TaskListener listener, List<Action> actions) {
+        return splitDependency.shouldTriggerBuild(splitBuild, listener, actions);
     }
 
     protected boolean conditionIsMet(Result overallResult) {
@@ -88,12 +97,18 @@ public class JoinDependency<DEP extends DependencyGraph.Dependency> extends Depe
 
     @Override
     public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        }
         if (obj == null) {
             return false;
         }
         if (getClass() != obj.getClass()) {
             return false;
         }
+        if (hashCode() != obj.hashCode()) {
+            return false;
+        }
         if (!super.equals(obj)) {
             return false;
         }
@@ -107,15 +122,22 @@ public class JoinDependency<DEP extends DependencyGraph.Dependency> extends Depe
         return true;
     }
 
+    /**
+     * Computed once, since the edge does not change after it was created.
+     */
     @Override
-    public int hashCode() {
+    public final int hashCode() {
+        if (cachedHash == 0) {
+            cachedHash = computeHashCode();
+        }
+        return cachedHash;
+    }
+
+    protected int computeHashCode() {
         int hash = 3;
         hash = 79 * hash + super.hashCode();
         hash = 79 * hash + (this.splitProject != null ? this.splitProject.hashCode() : 0);
         hash = 79 * hash + (this.splitDependency != null ? this.splitDependency.hashCode() : 0);
         return hash;
     }
-
-
-
 }
@@ -0,0 +1,179 @@
+package join;
+
+import hudson.Extension;
+import hudson.model.AbstractProject;
+import hudson.model.Item;
+import hudson.model.Result;
+import hudson.model.listeners.ItemListener;
+import hudson.plugins.parameterizedtrigger.BuildTriggerConfig;
+
+import java.lang.ref.WeakReference;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * Memoizes the {@link JoinDependency} edges contributed by the {@link JoinTrigger} of each project to the
+ * dependency graph.
+ * <p>
+ * The dependency graph cannot be changed once it is built, so every config save still rebuilds it completely. The
+ * edges of a project are only created again if its {@link JoinTrigger} was replaced or the stamp of the
+ * {@link DownstreamCache} changed, i.e. the project was saved or items were created, renamed or deleted. Any
+ * other project only adds its memoized edges.
+ * <p>
+ * Edges are interned as well: an edge between the same projects for the same split project and the same join
+ * config instance is only created once, as long as it is in use.
+ */
+final class JoinEdgeCache {
+    /**
+     * Edges by the full name of their owner. The edges reference their owner, so they are dropped explicitly when
+     * it is deleted, renamed or loaded again.
+     */
+    private static final Map<String, Entry> ENTRIES = new HashMap<String, Entry>();
+    /**
+     * Interned edges. A key is only reachable from its edge, so entries go away with their edge.
+     */
+    private static final Map<EdgeKey, WeakReference<JoinDependency<?>>> EDGES =
+            new WeakHashMap<EdgeKey, WeakReference<JoinDependency<?>>>();
+
+    private JoinEdgeCache() {}
+
+    static List<JoinDependency<?>> getDependencies(AbstractProject<?,?> owner, JoinTrigger joinTrigger) {
+        String stamp = DownstreamCache.stamp(owner);
+        synchronized (JoinEdgeCache.class) {
+            Entry entry = ENTRIES.get(owner.getFullName());
+            if (entry != null && entry.owner == owner && entry.joinTrigger == joinTrigger && entry.stamp.equals(stamp)) {
+                return entry.dependencies;
+            }
+        }
+        // created outside of the lock, a concurrent change leaves an outdated entry which is never matched
+        List<JoinDependency<?>> dependencies = Collections.unmodifiableList(joinTrigger.createDependencies(owner));
+        synchronized (JoinEdgeCache.class) {
+            ENTRIES.put(owner.getFullName(), new Entry(owner, joinTrigger, stamp, dependencies));
+        }
+        return dependencies;
+    }
+
+    static JoinTriggerDependency joinTriggerDependency(AbstractProject<?,?> upstream, AbstractProject<?,?> downstream,
+            AbstractProject<?,?> splitProject, Result resultThreshold) {
+        EdgeKey key = new EdgeKey(upstream, downstream, splitProject, resultThreshold);
+        synchronized (JoinEdgeCache.class) {
+            JoinDependency<?> interned = getInterned(key);
+            if (interned != null) {
+                return (JoinTriggerDependency) interned;
+            }
+            return intern(key, new JoinTriggerDependency(upstream, downstream, splitProject, resultThreshold));
+        }
+    }
+
+    static ParameterizedJoinDependency parameterizedJoinDependency(AbstractProject<?,?> upstream,
+            AbstractProject<?,?> downstream, AbstractProject<?,?> splitProject, BuildTriggerConfig config) {
+        EdgeKey key = new EdgeKey(upstream, downstream, splitProject, config);
+        synchronized (JoinEdgeCache.class) {
+            JoinDependency<?> interned = getInterned(key);
+            if (interned != null) {
+                return (ParameterizedJoinDependency) interned;
+            }
+            return intern(key, new ParameterizedJoinDependency(upstream, downstream, splitProject, config));
+        }
+    }
+
+    private static JoinDependency<?> getInterned(EdgeKey key) {
+        WeakReference<JoinDependency<?>> reference = EDGES.get(key);
+        return reference != null ? reference.get() : null;
+    }
+
+    private static <D extends JoinDependency<?>> D intern(EdgeKey key, D dependency) {
+        dependency.key = key;
+        EDGES.put(key, new WeakReference<JoinDependency<?>>(dependency));
+        return dependency;
+    }
+
+    /**
+     * Identifies an edge by the identity of its projects and of its condition, i.e. the result threshold of a
+     * {@link JoinTriggerDependency} or the config of a {@link ParameterizedJoinDependency}.
+     */
+    static final class EdgeKey {
+        private final AbstractProject<?,?> upstream;
+        private final AbstractProject<?,?> downstream;
+        private final AbstractProject<?,?> splitProject;
+        private final Object condition;
+        private final int hash;
+
+        EdgeKey(AbstractProject<?,?> upstream, AbstractProject<?,?> downstream, AbstractProject<?,?> splitProject,
+                Object condition) {
+            this.upstream = upstream;
+            this.downstream = downstream;
+            this.splitProject = splitProject;
+            this.condition = condition;
+            int hash = System.identityHashCode(upstream);
+            hash = 31 * hash + System.identityHashCode(downstream);
+            hash = 31 * hash + System.identityHashCode(splitProject);
+            this.hash = 31 * hash + System.identityHashCode(condition);
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof EdgeKey)) {
+                return false;
+            }
+            EdgeKey other = (EdgeKey) obj;
+            return hash == other.hash && upstream == other.upstream && downstream == other.downstream
+                    && splitProject == other.splitProject && condition == other.condition;
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+
+    static synchronized boolean isCached(String ownerName) {
+        return ENTRIES.containsKey(ownerName);
+    }
+
+    static synchronized void forget(String ownerName) {
+        ENTRIES.remove(ownerName);
+    }
+
+    static synchronized void forgetAll() {
+        ENTRIES.clear();
+    }
+
+    private static final class Entry {
+        private final AbstractProject<?,?> owner;
+        private final JoinTrigger joinTrigger;
+        private final String stamp;
+        private final List<JoinDependency<?>> dependencies;
+
+        Entry(AbstractProject<?,?> owner, JoinTrigger joinTrigger, String stamp, List<JoinDependency<?>> dependencies) {
+            this.owner = owner;
+            this.joinTrigger = joinTrigger;
+            this.stamp = stamp;
+            this.dependencies = dependencies;
+        }
+    }
+
+    @Extension
+    public static class ItemListenerImpl extends ItemListener {
+        @Override
+        public void onDeleted(Item item) {
+            forget(item.getFullName());
+        }
+
+        @Override
+        public void onLocationChanged(Item item, String oldFullName, String newFullName) {
+            forget(oldFullName);
+        }
+
+        @Override
+        public void onLoaded() {
+            forgetAll();
+        }
+    }
+}
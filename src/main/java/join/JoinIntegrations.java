@@ -0,0 +1,163 @@
+package join;
+
+import hudson.PluginManager;
+import hudson.model.AbstractProject;
+import hudson.model.Descriptor;
+import hudson.model.Hudson;
+import hudson.model.ItemGroup;
+import hudson.plugins.downstream_ext.DownstreamTrigger;
+import hudson.plugins.parameterizedtrigger.BuildTriggerConfig;
+import hudson.tasks.BuildStep;
+import hudson.tasks.Publisher;
+import hudson.util.DescribableList;
+import jenkins.model.Jenkins;
+import org.jenkins_ci.plugins.flexible_publish.ConditionalPublisher;
+import org.jenkins_ci.plugins.flexible_publish.FlexiblePublisher;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Optional plugin integrations used by the join trigger, resolved once per change of the installed plugins.
+ * Each integration is exposed as an adapter which does nothing if the plugin is not installed, so callers never have
+ * to look plugins up by name.
+ * <p>
+ * The matrix integration needs no adapter: {@link JoinTrigger#createAggregator} is only ever called by matrix builds.
+ */
+final class JoinIntegrations {
+    private static volatile JoinIntegrations current;
+
+    private final PluginManager pluginManager;
+    private final int pluginCount;
+
+    final ParameterizedTrigger parameterizedTrigger;
+    final DownstreamExt downstreamExt;
+    final FlexiblePublish flexiblePublish;
+    final List<Descriptor<Publisher>> applicableDescriptors;
+
+    private JoinIntegrations(Jenkins jenkins) {
+        this.pluginManager = jenkins.getPluginManager();
+        this.pluginCount = pluginManager.getPlugins().size();
+        boolean hasParameterizedTrigger = jenkins.getPlugin("parameterized-trigger") != null;
+        this.parameterizedTrigger = hasParameterizedTrigger
+                ? new ParameterizedTriggerPresent() : new ParameterizedTrigger();
+        this.downstreamExt = jenkins.getPlugin("downstream-ext") != null
+                ? new DownstreamExtPresent() : new DownstreamExt();
+        this.flexiblePublish = hasParameterizedTrigger && jenkins.getPlugin("flexible-publish") != null
+                ? new FlexiblePublishPresent() : new FlexiblePublish();
+
+        List<Descriptor<Publisher>> descriptors = new ArrayList<Descriptor<Publisher>>();
+        if (hasParameterizedTrigger) {
+            descriptors.add(jenkins.getDescriptorByType(hudson.plugins.parameterizedtrigger.BuildTrigger.DescriptorImpl.class));
+        }
+        descriptors.add(jenkins.getDescriptorByType(hudson.tasks.Mailer.DescriptorImpl.class));
+        this.applicableDescriptors = Collections.unmodifiableList(descriptors);
+    }
+
+    /**
+     * @return the integrations for the currently installed plugins.
+     */
+    static JoinIntegrations get() {
+        Jenkins jenkins = Jenkins.getInstance();
+        JoinIntegrations integrations = current;
+        if (integrations == null || !integrations.isCurrent(jenkins)) {
+            integrations = new JoinIntegrations(jenkins);
+            current = integrations;
+        }
+        return integrations;
+    }
+
+    private boolean isCurrent(Jenkins jenkins) {
+        PluginManager pm = jenkins.getPluginManager();
+        return pm == pluginManager && pm.getPlugins().size() == pluginCount;
+    }
+
+    /**
+     * Adapter for the parameterized-trigger plugin.
+     */
+    static class ParameterizedTrigger {
+        List<BuildTriggerConfig> getConfigs(DescribableList<Publisher,Descriptor<Publisher>> publishers) {
+            return new ArrayList<BuildTriggerConfig>();
+        }
+    }
+
+    private static final class ParameterizedTriggerPresent extends ParameterizedTrigger {
+        @Override
+        List<BuildTriggerConfig> getConfigs(DescribableList<Publisher,Descriptor<Publisher>> publishers) {
+            List<BuildTriggerConfig> ret = new ArrayList<BuildTriggerConfig>();
+            hudson.plugins.parameterizedtrigger.BuildTrigger buildTrigger =
+                publishers.get(hudson.plugins.parameterizedtrigger.BuildTrigger.class);
+            if (buildTrigger != null) {
+                ret.addAll(buildTrigger.getConfigs());
+            }
+            return ret;
+        }
+    }
+
+    /**
+     * Adapter for the downstream-ext plugin.
+     */
+    static class DownstreamExt {
+        List<AbstractProject<?,?>> getChildProjects(ItemGroup context,
+                DescribableList<Publisher,Descriptor<Publisher>> publishers) {
+            return new ArrayList<AbstractProject<?,?>>();
+        }
+    }
+
+    private static final class DownstreamExtPresent extends DownstreamExt {
+        @Override
+        List<AbstractProject<?,?>> getChildProjects(ItemGroup context,
+                DescribableList<Publisher,Descriptor<Publisher>> publishers) {
+            List<AbstractProject<?,?>> ret = new ArrayList<AbstractProject<?, ?>>();
+            DownstreamTrigger buildTrigger = publishers.get(DownstreamTrigger.class);
+            if (buildTrigger != null) {
+                for (AbstractProject<?,?> project : buildTrigger.getChildProjects(context)) {
+                    ret.add(project);
+                }
+            }
+            return ret;
+        }
+    }
+
+    /**
+     * Adapter for parameterized triggers nested in the flexible-publish plugin.
+     */
+    static class FlexiblePublish {
+        List<AbstractProject<?,?>> getParameterizedDownstream(AbstractProject<?,?> project) {
+            return new ArrayList<AbstractProject<?,?>>();
+        }
+    }
+
+    private static final class FlexiblePublishPresent extends FlexiblePublish {
+        @Override
+        List<AbstractProject<?,?>> getParameterizedDownstream(AbstractProject<?,?> project) {
+            List<AbstractProject<?, ?>> ret = new ArrayList<AbstractProject<?, ?>>();
+            FlexiblePublisher flexiblePublisher = project.getPublishersList().get(FlexiblePublisher.class);
+            if (flexiblePublisher != null) {
+                for (ConditionalPublisher conditionalPublisher : flexiblePublisher.getPublishers()) {
+                    for (BuildStep buildStep : conditionalPublisher.getPublisherList()) {
+                        if (buildStep instanceof hudson.plugins.parameterizedtrigger.BuildTrigger) {
+                            ret.addAll(getProjectsFromBuildTriggerConfigs(
+                                    (hudson.plugins.parameterizedtrigger.BuildTrigger) buildStep));
+                        }
+                    }
+                }
+            }
+            return ret;
+        }
+
+        private List<AbstractProject<?, ?>> getProjectsFromBuildTriggerConfigs(
+                hudson.plugins.parameterizedtrigger.BuildTrigger buildTrigger) {
+            List<AbstractProject<?, ?>> ret = new ArrayList<AbstractProject<?, ?>>();
+            for (hudson.model.Project p : Hudson.getInstance().getProjects()) {
+                for (BuildTriggerConfig config : buildTrigger.getConfigs()) {
+                    if (p.getName().equals(config.getProjects())) {
+                        ret.add(p);
+                    }
+                }
+            }
+            return ret;
+        }
+    }
+}
@@ -0,0 +1,133 @@
+package join;
+
+import hudson.model.Result;
+import hudson.util.IOUtils;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.LinkedList;
+import java.util.List;
+
+/**
+ * Structured log of the changes of the join state of a split build, kept next to its build.xml. Every line records
+ * one change, so the log grows linearly with the number of downstream builds, unlike printing the pending projects
+ * to the console on every completion.
+ * <p>
+ * Lines are tab separated: time, event, subject, result and number of pending downstream projects.
+ */
+final class JoinLog {
+    static final String FILE_NAME = "joinLog.txt";
+    private static final String ENCODING = "UTF-8";
+
+    private JoinLog() {
+    }
+
+    static void append(File buildDir, String event, String subject, Result result, int pendingCount) throws IOException {
+        append(buildDir, Collections.singletonList(line(event, subject, result, pendingCount)));
+    }
+
+    /**
+     * Appends lines created by {@link #line} at once.
+     */
+    static void append(File buildDir, List<String> lines) throws IOException {
+        Writer writer = new OutputStreamWriter(new FileOutputStream(new File(buildDir, FILE_NAME), true), ENCODING);
+        try {
+            for (String line : lines) {
+                writer.write(line);
+                writer.write('\n');
+            }
+        } finally {
+            writer.close();
+        }
+    }
+
+    /**
+     * A line of the log recording a change which happened now.
+     */
+    static String line(String event, String subject, Result result, int pendingCount) {
+        return System.currentTimeMillis() + "\t" + event + "\t" + subject + "\t" + result + "\t" + pendingCount;
+    }
+
+    /**
+     * @return the entry of a line created by {@link #line}, or null if it is malformed
+     */
+    static Entry parse(String line) {
+        String[] fields = line.split("\t");
+        return fields.length < 5 ? null : new Entry(fields);
+    }
+
+    /**
+     * @return the last <code>max</code> entries of the log
+     */
+    static List<Entry> tail(File buildDir, int max) throws IOException {
+        File file = new File(buildDir, FILE_NAME);
+        if (!file.isFile()) {
+            return new ArrayList<Entry>();
+        }
+        LinkedList<Entry> entries = new LinkedList<Entry>();
+        BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), ENCODING));
+        try {
+            for (String line; (line = reader.readLine()) != null;) {
+                Entry entry = parse(line);
+                if (entry == null) {
+                    continue;
+                }
+                entries.add(entry);
+                if (entries.size() > max) {
+                    entries.removeFirst();
+                }
+            }
+        } finally {
+            IOUtils.closeQuietly(reader);
+        }
+        return entries;
+    }
+
+    /**
+     * A single change of the join state.
+     */
+    public static final class Entry {
+        private final long time;
+        private final String event;
+        private final String subject;
+        private final String result;
+        private final int pendingCount;
+
+        private Entry(String[] fields) {
+            this.time = Long.parseLong(fields[0]);
+            this.event = fields[1];
+            this.subject = fields[2];
+            this.result = fields[3];
+            this.pendingCount = Integer.parseInt(fields[4]);
+        }
+
+        public Date getTime() {
+            return new Date(time);
+        }
+
+        public String getEvent() {
+            return event;
+        }
+
+        public String getSubject() {
+            return subject;
+        }
+
+        public String getResult() {
+            return result;
+        }
+
+        public int getPendingCount() {
+            return pendingCount;
+        }
+    }
+}
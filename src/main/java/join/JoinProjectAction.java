@@ -0,0 +1,117 @@
+package join;
+
+import hudson.model.AbstractProject;
+import hudson.model.Action;
+import hudson.model.Api;
+import hudson.model.Item;
+import net.sf.json.JSONObject;
+import org.kohsuke.stapler.QueryParameter;
+import org.kohsuke.stapler.StaplerRequest;
+import org.kohsuke.stapler.StaplerResponse;
+import org.kohsuke.stapler.export.Exported;
+import org.kohsuke.stapler.export.ExportedBean;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Join history of a split project, built from the {@link JoinSummary} files of its builds.
+ */
+@ExportedBean
+public class JoinProjectAction implements Action {
+    private static final Logger LOGGER = Logger.getLogger(JoinProjectAction.class.getName());
+
+    /**
+     * Maximum number of builds shown in the join history.
+     */
+    public static int HISTORY_SIZE = Integer.getInteger(JoinProjectAction.class.getName() + ".historySize", 100);
+
+    private final AbstractProject<?,?> project;
+
+    public JoinProjectAction(AbstractProject<?,?> project) {
+        this.project = project;
+    }
+
+    public String getDisplayName() {
+        return "Join History";
+    }
+
+    public String getIconFileName() {
+        return "clock.png";
+    }
+
+    public String getUrlName() {
+        return "joinHistory";
+    }
+
+    public AbstractProject<?,?> getProject() {
+        return project;
+    }
+
+    public Api getApi() {
+        return new Api(this);
+    }
+
+    /**
+     * Streams aggregated join statistics of the last <code>days</code> days (30 by default) from the join analytics
+     * log as JSON.
+     */
+    public void doAnalytics(StaplerRequest req, StaplerResponse rsp, @QueryParameter int days) throws IOException {
+        project.checkPermission(Item.READ);
+        if (days <= 0) {
+            days = 30;
+        }
+        long since = System.currentTimeMillis() - TimeUnit.DAYS.toMillis(days);
+        JSONObject aggregate = JoinAnalytics.aggregate(project, since);
+        aggregate.put("days", days);
+        rsp.setContentType("application/json;charset=UTF-8");
+        Writer writer = rsp.getCompressedWriter(req);
+        try {
+            aggregate.write(writer);
+        } finally {
+            writer.close();
+        }
+    }
+
+    /**
+     * Join summaries of the most recent split builds, newest first.
+     */
+    @Exported
+    public List<JoinSummary> getSummaries() {
+        List<Integer> buildNumbers = new ArrayList<Integer>();
+        String[] names = project.getBuildDir().list();
+        if (names != null) {
+            for (String name : names) {
+                try {
+                    buildNumbers.add(Integer.parseInt(name));
+                } catch (NumberFormatException e) {
+                    // not a build directory
+                }
+            }
+        }
+        Collections.sort(buildNumbers, Collections.reverseOrder());
+
+        List<JoinSummary> summaries = new ArrayList<JoinSummary>();
+        for (Integer buildNumber : buildNumbers) {
+            if (summaries.size() >= HISTORY_SIZE) {
+                break;
+            }
+            try {
+                JoinSummary summary = JoinSummary.read(buildNumber, new File(project.getBuildDir(), buildNumber.toString()));
+                if (summary != null) {
+                    summaries.add(summary);
+                }
+            } catch (IOException e) {
+                LOGGER.log(Level.WARNING, "Failed to read join summary of " + project.getFullName() + " #" + buildNumber, e);
+            }
+        }
+        return summaries;
+    }
+}
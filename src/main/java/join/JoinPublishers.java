@@ -0,0 +1,134 @@
+package join;
+
+import hudson.model.AbstractBuild;
+import hudson.model.BuildListener;
+import hudson.model.Computer;
+import hudson.model.StreamBuildListener;
+import hudson.model.TaskListener;
+import hudson.security.ACL;
+import hudson.tasks.Publisher;
+import jenkins.model.Jenkins;
+import org.acegisecurity.Authentication;
+import org.acegisecurity.context.SecurityContext;
+import org.acegisecurity.context.SecurityContextHolder;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Runs the join publishers of a split build once its join fired, one after the other or in parallel.
+ */
+final class JoinPublishers {
+    private JoinPublishers() {
+    }
+
+    static void perform(Iterable<Publisher> publishers, AbstractBuild<?,?> splitBuild, TaskListener listener) {
+        BuildListener buildListener = asBuildListener(listener);
+        for (Publisher pub : publishers) {
+            try {
+                pub.perform(splitBuild, null, buildListener);
+            } catch (InterruptedException e) {
+                listener.getLogger().print(e.toString());
+            } catch (IOException e) {
+                listener.getLogger().print(e.toString());
+            } catch (RuntimeException e) {
+                e.printStackTrace(listener.error("[Join] Join publisher " + pub.getDescriptor().getDisplayName() + " failed"));
+            }
+        }
+    }
+
+    /**
+     * Runs all join publishers concurrently on the pool Jenkins keeps for short-lived tasks, and reports their
+     * outcome in the given log once all of them are done. Each publisher may run for the timeout from the moment it
+     * started, a publisher which is still running afterwards is interrupted and not waited for anymore.
+     * <p>
+     * The publishers run with the authentication of the caller, like the serial ones.
+     *
+     * @param timeout seconds each publisher may run, or 0 for no limit
+     */
+    static void performInParallel(Iterable<Publisher> publishers, AbstractBuild<?,?> splitBuild,
+            TaskListener listener, int timeout) {
+        BuildListener buildListener = asBuildListener(listener);
+        Authentication authentication = Jenkins.getAuthentication();
+        Map<Publisher, PublisherRun> runs = new LinkedHashMap<Publisher, PublisherRun>();
+        for (Publisher pub : publishers) {
+            PublisherRun run = new PublisherRun(pub, splitBuild, buildListener, authentication);
+            run.future = Computer.threadPoolForRemoting.submit(run);
+            runs.put(pub, run);
+        }
+        for (Map.Entry<Publisher, PublisherRun> entry : runs.entrySet()) {
+            String name = entry.getKey().getDescriptor().getDisplayName();
+            PublisherRun run = entry.getValue();
+            try {
+                Boolean result;
+                if (timeout > 0) {
+                    run.started.await();
+                    long remaining = run.startedAt + timeout * 1000L - System.currentTimeMillis();
+                    result = run.future.get(Math.max(0, remaining), TimeUnit.MILLISECONDS);
+                } else {
+                    result = run.future.get();
+                }
+                listener.getLogger().println("[Join] Join publisher " + name + (Boolean.FALSE.equals(result) ? " failed" : " done"));
+            } catch (TimeoutException e) {
+                run.future.cancel(true);
+                listener.error("[Join] Join publisher " + name + " timed out after " + timeout
+                        + " seconds, it has been interrupted but may still be running");
+            } catch (ExecutionException e) {
+                e.getCause().printStackTrace(listener.error("[Join] Join publisher " + name + " failed"));
+            } catch (InterruptedException e) {
+                run.future.cancel(true);
+                listener.getLogger().print(e.toString());
+            }
+        }
+    }
+
+    /**
+     * A join publisher running in parallel, tracking when it started.
+     */
+    private static final class PublisherRun implements Callable<Boolean> {
+        private final Publisher publisher;
+        private final AbstractBuild<?,?> splitBuild;
+        private final BuildListener listener;
+        private final Authentication authentication;
+        private final CountDownLatch started = new CountDownLatch(1);
+        private volatile long startedAt;
+        private Future<Boolean> future;
+
+        PublisherRun(Publisher publisher, AbstractBuild<?,?> splitBuild, BuildListener listener, Authentication authentication) {
+            this.publisher = publisher;
+            this.splitBuild = splitBuild;
+            this.listener = listener;
+            this.authentication = authentication;
+        }
+
+        public Boolean call() throws Exception {
+            startedAt = System.currentTimeMillis();
+            started.countDown();
+            SecurityContext orig = ACL.impersonate(authentication);
+            try {
+                return publisher.perform(splitBuild, null, listener);
+            } finally {
+                SecurityContextHolder.setContext(orig);
+            }
+        }
+    }
+
+    /**
+     * Join publishers need a {@link BuildListener}, but completions received by a {@link JoinCompletionTransport}
+     * come with the listener of the receiving task.
+     */
+    static BuildListener asBuildListener(TaskListener listener) {
+        if (listener instanceof BuildListener) {
+            return (BuildListener) listener;
+        }
+        return new StreamBuildListener(listener.getLogger(), Charset.defaultCharset());
+    }
+}
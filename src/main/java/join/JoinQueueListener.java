@@ -0,0 +1,96 @@
+package join;
+
+import hudson.Extension;
+import hudson.model.AbstractProject;
+import hudson.model.Cause;
+import hudson.model.ParametersAction;
+import hudson.model.Queue;
+import hudson.model.Run;
+import hudson.model.TaskListener;
+import hudson.model.queue.QueueListener;
+import jenkins.util.Timer;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Tells the joins which builds of their downstream projects to expect, so a project triggered several times by one
+ * split build, e.g. once per test shard, is joined on every one of its builds.
+ * <p>
+ * The callbacks run while the queue is locked, so they only record the change. Resolving the split builds and
+ * updating their joins happens afterwards in the background, or before a completion is dispatched, whichever comes
+ * first.
+ */
+@Extension
+public class JoinQueueListener extends QueueListener {
+    private static final ConcurrentLinkedQueue<Change> PENDING = new ConcurrentLinkedQueue<Change>();
+
+    @Override
+    public void onEnterWaiting(Queue.WaitingItem wi) {
+        if (!(wi.task instanceof AbstractProject)) {
+            return;
+        }
+        submit(new Change(wi, false));
+    }
+
+    @Override
+    public void onLeft(Queue.LeftItem li) {
+        if (!li.isCancelled() || !(li.task instanceof AbstractProject)) {
+            return;
+        }
+        submit(new Change(li, true));
+    }
+
+    private static void submit(Change change) {
+        PENDING.add(change);
+        Timer.get().submit(new Runnable() {
+            public void run() {
+                applyPending();
+            }
+        });
+    }
+
+    /**
+     * Applies the recorded queue changes to the joins of their split builds, in the order they happened. Must not
+     * be called while holding the queue lock or the lock of a join.
+     */
+    static void applyPending() {
+        synchronized (PENDING) {
+            for (Change change; (change = PENDING.poll()) != null;) {
+                change.apply();
+            }
+        }
+    }
+
+    /**
+     * A build of a downstream project entering the queue, or leaving it without being built.
+     */
+    private static final class Change {
+        private final String projectName;
+        private final String parametersHash;
+        private final List<Cause> causes;
+        private final boolean cancelled;
+
+        Change(Queue.Item item, boolean cancelled) {
+            this.projectName = ((AbstractProject<?,?>) item.task).getFullName();
+            this.parametersHash = ExpectedInstances.parametersHash(item.getAction(ParametersAction.class));
+            this.causes = new ArrayList<Cause>(item.getCauses());
+            this.cancelled = cancelled;
+        }
+
+        void apply() {
+            for (Run<?,?> splitBuild : JoinCompletionDispatcher.getUpstreamBuilds(causes, TaskListener.NULL)) {
+                JoinAction joinAction = JoinAction.of(splitBuild);
+                if (joinAction == null) {
+                    continue;
+                }
+                if (cancelled) {
+                    joinAction.cancelInstance(projectName, parametersHash);
+                } else {
+                    joinAction.expectInstance(projectName, parametersHash);
+                }
+            }
+        }
+    }
+}
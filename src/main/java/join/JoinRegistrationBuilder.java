@@ -0,0 +1,174 @@
+package join;
+
+import hudson.AbortException;
+import hudson.EnvVars;
+import hudson.Extension;
+import hudson.Launcher;
+import hudson.Util;
+import hudson.model.AbstractBuild;
+import hudson.model.AbstractProject;
+import hudson.model.BuildListener;
+import hudson.model.InvisibleAction;
+import hudson.model.Project;
+import hudson.model.Run;
+import hudson.tasks.BuildStepDescriptor;
+import hudson.tasks.Builder;
+import jenkins.model.Jenkins;
+import org.kohsuke.stapler.DataBoundConstructor;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.StringTokenizer;
+
+/**
+ * Build step registering additional downstream projects with a running join, e.g. one project per test partition
+ * computed at runtime.
+ * <p>
+ * Used in the split build, the projects are added to the join of the build, which waits for them once the
+ * {@link JoinTrigger} or the {@link JoinWaitBuilder} runs. Used in a downstream build of a split build, they are added
+ * to the join of that split build right away. Builds triggered by
+ * the registering build are attributed to the split build.
+ * <p>
+ * Projects prefixed with <code>remote:</code> run on another controller and are joined through a
+ * {@link JoinCompletionTransport}.
+ */
+public class JoinRegistrationBuilder extends Builder {
+    static final String REMOTE_PREFIX = "remote:";
+
+    private final String projects;
+    private final String registrationId;
+
+    @DataBoundConstructor
+    public JoinRegistrationBuilder(String projects, String registrationId) {
+        this.projects = projects;
+        this.registrationId = Util.fixEmptyAndTrim(registrationId);
+    }
+
+    public String getProjects() {
+        return projects;
+    }
+
+    public String getRegistrationId() {
+        return registrationId;
+    }
+
+    @Override
+    public boolean perform(AbstractBuild<?, ?> build, Launcher launcher, BuildListener listener)
+            throws InterruptedException, IOException {
+        EnvVars env = build.getEnvironment(listener);
+        List<String> names = resolveProjects(build, env.expand(projects));
+        String id = registrationId == null ? build.getExternalizableId() + ":" + names : env.expand(registrationId);
+
+        if (isSplitBuild(build)) {
+            try {
+                JoinAction.arm(build).registerPendingDownstream(names, id);
+            } catch (IllegalStateException e) {
+                throw new AbortException("[Join] " + e.getMessage());
+            }
+            listener.getLogger().println("[Join] Registered " + names + " with the join of this build");
+            return true;
+        }
+
+        boolean registered = false;
+        for (Run<?,?> splitBuild : JoinCompletionDispatcher.getUpstreamBuilds(build, listener)) {
+            JoinAction joinAction = JoinAction.of(splitBuild);
+            if (joinAction == null) {
+                continue;
+            }
+            try {
+                if (joinAction.registerPendingDownstream(names, id)) {
+                    splitBuild.save();
+                    listener.getLogger().println("[Join] Registered " + names + " with the join of "
+                            + splitBuild.getFullDisplayName());
+                } else {
+                    listener.getLogger().println("[Join] " + id + " is already registered with the join of "
+                            + splitBuild.getFullDisplayName());
+                }
+            } catch (IllegalStateException e) {
+                throw new AbortException("[Join] " + e.getMessage());
+            }
+            if (!isRegisteredWith(build, splitBuild)) {
+                build.addAction(new RegisteredWith(splitBuild));
+            }
+            registered = true;
+        }
+        if (!registered) {
+            throw new AbortException("[Join] No running join found to register " + names + " with");
+        }
+        return true;
+    }
+
+    /**
+     * @return whether the build joins on its own downstream builds, i.e. its project has a {@link JoinTrigger} or a
+     * {@link JoinWaitBuilder}.
+     */
+    private static boolean isSplitBuild(AbstractBuild<?,?> build) {
+        JoinAction joinAction = build.getAction(JoinAction.class);
+        if (joinAction != null) {
+            return joinAction.isOpen();
+        }
+        AbstractProject<?,?> project = build.getProject();
+        return project.getPublishersList().get(JoinTrigger.class) != null
+                || (project instanceof Project && ((Project<?,?>) project).getBuildersList().get(JoinWaitBuilder.class) != null);
+    }
+
+    private static boolean isRegisteredWith(AbstractBuild<?,?> build, Run<?,?> splitBuild) {
+        for (RegisteredWith link : build.getActions(RegisteredWith.class)) {
+            if (link.splitBuildId.equals(splitBuild.getExternalizableId())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static List<String> resolveProjects(AbstractBuild<?,?> build, String projects) throws AbortException {
+        List<String> names = new ArrayList<String>();
+        StringTokenizer tokens = new StringTokenizer(Util.fixNull(projects), ",");
+        while (tokens.hasMoreTokens()) {
+            String name = tokens.nextToken().trim();
+            if (name.length() == 0) {
+                continue;
+            }
+            if (name.startsWith(REMOTE_PREFIX)) {
+                // runs on another controller, joined through a JoinCompletionTransport
+                names.add(name.substring(REMOTE_PREFIX.length()).trim());
+                continue;
+            }
+            AbstractProject<?,?> project = Jenkins.getInstance().getItem(name, build.getProject(), AbstractProject.class);
+            if (project == null) {
+                throw new AbortException("[Join] No such project: " + name);
+            }
+            names.add(project.getFullName());
+        }
+        return names;
+    }
+
+    /**
+     * Marks a build which registered downstream projects with the join of a split build.
+     */
+    public static final class RegisteredWith extends InvisibleAction {
+        private final String splitBuildId;
+
+        RegisteredWith(Run<?,?> splitBuild) {
+            this.splitBuildId = splitBuild.getExternalizableId();
+        }
+
+        Run<?,?> getSplitBuild() {
+            return Run.fromExternalizableId(splitBuildId);
+        }
+    }
+
+    @Extension
+    public static class DescriptorImpl extends BuildStepDescriptor<Builder> {
+        @Override
+        public String getDisplayName() {
+            return "Register downstream projects with join";
+        }
+
+        @Override
+        public boolean isApplicable(Class<? extends AbstractProject> jobType) {
+            return true;
+        }
+    }
+}
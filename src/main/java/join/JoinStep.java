@@ -0,0 +1,231 @@
+package join;
+
+import com.google.inject.Inject;
+import hudson.AbortException;
+import hudson.Extension;
+import hudson.Util;
+import hudson.model.AbstractProject;
+import hudson.model.Descriptor;
+import hudson.model.Result;
+import hudson.model.Run;
+import hudson.model.Saveable;
+import hudson.model.TaskListener;
+import hudson.tasks.Publisher;
+import hudson.util.DescribableList;
+import jenkins.model.Jenkins;
+import org.jenkinsci.plugins.workflow.steps.AbstractStepDescriptorImpl;
+import org.jenkinsci.plugins.workflow.steps.AbstractStepExecutionImpl;
+import org.jenkinsci.plugins.workflow.steps.AbstractStepImpl;
+import org.jenkinsci.plugins.workflow.steps.BodyExecutionCallback;
+import org.jenkinsci.plugins.workflow.steps.StepContext;
+import org.jenkinsci.plugins.workflow.steps.StepContextParameter;
+import org.kohsuke.stapler.DataBoundConstructor;
+import org.kohsuke.stapler.DataBoundSetter;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.StringTokenizer;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Pipeline step joining on the builds of downstream projects, e.g.
+ * <pre>
+ * joinOn(projects: 'test-a, test-b') {
+ *     build job: 'test-a', wait: false
+ *     build job: 'test-b', wait: false
+ * }
+ * </pre>
+ * The join is armed before the block runs, so every build of the projects triggered by the pipeline run counts.
+ * After the block the step suspends without holding an executor until the join fired, and fails if the downstream
+ * builds are worse than the result threshold.
+ */
+public class JoinStep extends AbstractStepImpl {
+    private final String projects;
+    private String resultThreshold = Result.SUCCESS.toString();
+
+    @DataBoundConstructor
+    public JoinStep(String projects) {
+        this.projects = projects;
+    }
+
+    public String getProjects() {
+        return projects;
+    }
+
+    public String getResultThreshold() {
+        return resultThreshold;
+    }
+
+    @DataBoundSetter
+    public void setResultThreshold(String resultThreshold) {
+        this.resultThreshold = Util.fixEmptyAndTrim(resultThreshold) == null ? Result.SUCCESS.toString() : resultThreshold;
+    }
+
+    public static class Execution extends AbstractStepExecutionImpl {
+        private static final long serialVersionUID = 1L;
+
+        /**
+         * Executions whose join did not fire yet, by the id of their run.
+         */
+        private static final Map<String, Execution> WAITING = new ConcurrentHashMap<String, Execution>();
+
+        @Inject(optional = true)
+        private transient JoinStep step;
+        @StepContextParameter
+        private transient Run<?,?> run;
+        @StepContextParameter
+        private transient TaskListener listener;
+
+        private String splitBuildId;
+        private String resultThreshold;
+        private boolean bodyFinished;
+        private boolean done;
+
+        @Override
+        public boolean start() throws Exception {
+            JoinAction previous = run.getAction(JoinAction.class);
+            if (previous != null && !previous.isFired()) {
+                throw new AbortException("[Join] " + run.getFullDisplayName() + " is already waiting for a join");
+            }
+            if (previous != null) {
+                run.getActions().remove(previous);
+            }
+            List<String> names = resolveProjects(run, step.getProjects());
+            resultThreshold = step.getResultThreshold();
+            JoinAction joinAction = new JoinAction(new JoinTrigger(
+                    new DescribableList<Publisher, Descriptor<Publisher>>(Saveable.NOOP), "", resultThreshold), names);
+            run.addAction(joinAction);
+            run.save();
+            splitBuildId = run.getExternalizableId();
+            WAITING.put(splitBuildId, this);
+            listener.getLogger().println("[Join] Joining on " + names);
+            joinAction.checkPendingDownstream(run, listener);
+            getContext().newBodyInvoker().withCallback(new Callback(splitBuildId)).start();
+            return false;
+        }
+
+        @Override
+        public void stop(Throwable cause) throws Exception {
+            synchronized (this) {
+                done = true;
+            }
+            WAITING.remove(splitBuildId);
+            getContext().onFailure(cause);
+        }
+
+        @Override
+        public void onResume() {
+            super.onResume();
+            WAITING.put(splitBuildId, this);
+            checkDone();
+        }
+
+        private void bodyFinished() {
+            synchronized (this) {
+                bodyFinished = true;
+            }
+            checkDone();
+        }
+
+        /**
+         * Completes the step once the block finished and the join fired.
+         */
+        private void checkDone() {
+            Run<?,?> splitBuild = Run.fromExternalizableId(splitBuildId);
+            JoinAction joinAction = splitBuild == null ? null : JoinAction.of(splitBuild);
+            // read before locking the execution, since the join notifies while locked
+            boolean fired = joinAction == null || joinAction.isFired();
+            synchronized (this) {
+                if (done || !bodyFinished || !fired) {
+                    return;
+                }
+                done = true;
+            }
+            WAITING.remove(splitBuildId);
+            if (joinAction == null) {
+                getContext().onFailure(new AbortException("[Join] The join of " + splitBuildId + " is gone"));
+                return;
+            }
+            Result result = joinAction.getOverallResult();
+            if (result.isWorseThan(Result.fromString(resultThreshold))) {
+                getContext().onFailure(new AbortException("[Join] Downstream builds finished with " + result
+                        + ", worse than " + resultThreshold));
+            } else {
+                getContext().onSuccess(result.toString());
+            }
+        }
+
+        private static List<String> resolveProjects(Run<?,?> run, String projects) throws AbortException {
+            List<String> names = new ArrayList<String>();
+            StringTokenizer tokens = new StringTokenizer(Util.fixNull(projects), ",");
+            while (tokens.hasMoreTokens()) {
+                String name = tokens.nextToken().trim();
+                if (name.length() == 0) {
+                    continue;
+                }
+                AbstractProject<?,?> project = Jenkins.getInstance().getItem(name, run.getParent(), AbstractProject.class);
+                if (project == null) {
+                    throw new AbortException("[Join] No such project: " + name);
+                }
+                names.add(project.getFullName());
+            }
+            return names;
+        }
+    }
+
+    private static class Callback extends BodyExecutionCallback {
+        private static final long serialVersionUID = 1L;
+        private final String splitBuildId;
+
+        Callback(String splitBuildId) {
+            this.splitBuildId = splitBuildId;
+        }
+
+        @Override
+        public void onSuccess(StepContext context, Object result) {
+            Execution execution = Execution.WAITING.get(splitBuildId);
+            if (execution != null) {
+                execution.bodyFinished();
+            }
+        }
+
+        @Override
+        public void onFailure(StepContext context, Throwable t) {
+            Execution.WAITING.remove(splitBuildId);
+            context.onFailure(t);
+        }
+    }
+
+    /**
+     * Resumes the step waiting for the join of the split build, if any, see {@link JoinStepListener}.
+     */
+    static void fired(Run<?,?> splitBuild) {
+        Execution execution = Execution.WAITING.get(splitBuild.getExternalizableId());
+        if (execution != null) {
+            execution.checkDone();
+        }
+    }
+
+    @Extension(optional = true)
+    public static class DescriptorImpl extends AbstractStepDescriptorImpl {
+        public DescriptorImpl() {
+            super(Execution.class);
+        }
+
+        @Override
+        public String getFunctionName() {
+            return "joinOn";
+        }
+
+        @Override
+        public String getDisplayName() {
+            return "Join on downstream builds";
+        }
+
+        @Override
+        public boolean takesImplicitBlockArgument() {
+            return true;
+        }
+    }
+}
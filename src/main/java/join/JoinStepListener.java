@@ -0,0 +1,40 @@
+package join;
+
+import hudson.Extension;
+import hudson.model.Run;
+
+/**
+ * Resumes the {@link JoinStep} waiting for a join which fired.
+ * <p>
+ * Kept apart from {@link JoinStep} and free of Pipeline types, since it is loaded whether or not the Pipeline
+ * plugins are installed; {@link JoinStep} is only touched once they are found.
+ */
+@Extension
+public class JoinStepListener extends JoinCompletionListener {
+    private static final String STEP_CONTEXT = "org.jenkinsci.plugins.workflow.steps.StepContext";
+
+    private static volatile Boolean pipelineAvailable;
+
+    @Override
+    public void onFired(Run<?,?> splitBuild, JoinAction joinAction) {
+        if (isPipelineAvailable()) {
+            JoinStep.fired(splitBuild);
+        }
+    }
+
+    private static boolean isPipelineAvailable() {
+        Boolean available = pipelineAvailable;
+        if (available == null) {
+            try {
+                Class.forName(STEP_CONTEXT, false, JoinStepListener.class.getClassLoader());
+                available = true;
+            } catch (ClassNotFoundException e) {
+                available = false;
+            } catch (LinkageError e) {
+                available = false;
+            }
+            pipelineAvailable = available;
+        }
+        return available;
+    }
+}
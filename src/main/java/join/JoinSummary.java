@@ -0,0 +1,136 @@
+package join;
+
+import hudson.model.Result;
+import hudson.util.AtomicFileWriter;
+import hudson.util.IOUtils;
+import org.kohsuke.stapler.export.Exported;
+import org.kohsuke.stapler.export.ExportedBean;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Date;
+import java.util.Properties;
+
+/**
+ * Small summary of the join state of a split build, kept next to its build.xml so the join history of a project
+ * can be shown without loading the build records.
+ */
+@ExportedBean(defaultVisibility = 2)
+public final class JoinSummary {
+    static final String FILE_NAME = "joinSummary.properties";
+
+    /**
+     * State of a join.
+     */
+    public enum Status {
+        /** Some downstream builds are still pending. */
+        WAITING,
+        /** All downstream builds completed and the join fired. */
+        FIRED,
+        /** All downstream builds completed but the result threshold was not met. */
+        NOT_MET,
+        /** The join was merged into the join of another split build. */
+        COALESCED
+    }
+
+    private final int buildNumber;
+    private final Status status;
+    private final int pendingCount;
+    private final int completedCount;
+    private final Result overallResult;
+    private final long armedAt;
+    private final long firedAt;
+
+    JoinSummary(int buildNumber, Status status, int pendingCount, int completedCount, Result overallResult,
+            long armedAt, long firedAt) {
+        this.buildNumber = buildNumber;
+        this.status = status;
+        this.pendingCount = pendingCount;
+        this.completedCount = completedCount;
+        this.overallResult = overallResult;
+        this.armedAt = armedAt;
+        this.firedAt = firedAt;
+    }
+
+    @Exported
+    public int getBuildNumber() {
+        return buildNumber;
+    }
+
+    @Exported
+    public Status getStatus() {
+        return status;
+    }
+
+    @Exported
+    public int getPendingCount() {
+        return pendingCount;
+    }
+
+    @Exported
+    public int getCompletedCount() {
+        return completedCount;
+    }
+
+    @Exported
+    public Result getOverallResult() {
+        return overallResult;
+    }
+
+    @Exported
+    public long getArmedAt() {
+        return armedAt;
+    }
+
+    @Exported
+    public long getFiredAt() {
+        return firedAt;
+    }
+
+    public Date getFiredAtDate() {
+        return new Date(firedAt);
+    }
+
+    void write(File buildDir) throws IOException {
+        Properties properties = new Properties();
+        properties.setProperty("status", status.name());
+        properties.setProperty("pending", String.valueOf(pendingCount));
+        properties.setProperty("completed", String.valueOf(completedCount));
+        properties.setProperty("result", String.valueOf(overallResult));
+        properties.setProperty("armedAt", String.valueOf(armedAt));
+        properties.setProperty("firedAt", String.valueOf(firedAt));
+        AtomicFileWriter writer = new AtomicFileWriter(new File(buildDir, FILE_NAME));
+        try {
+            properties.store(writer, null);
+            writer.commit();
+        } finally {
+            writer.abort();
+        }
+    }
+
+    /**
+     * @return the summary stored in the build directory, or null if there is none.
+     */
+    static JoinSummary read(int buildNumber, File buildDir) throws IOException {
+        File file = new File(buildDir, FILE_NAME);
+        if (!file.isFile()) {
+            return null;
+        }
+        Properties properties = new Properties();
+        InputStream in = new FileInputStream(file);
+        try {
+            properties.load(in);
+        } finally {
+            IOUtils.closeQuietly(in);
+        }
+        return new JoinSummary(buildNumber,
+                Status.valueOf(properties.getProperty("status", Status.WAITING.name())),
+                Integer.parseInt(properties.getProperty("pending", "0")),
+                Integer.parseInt(properties.getProperty("completed", "0")),
+                Result.fromString(properties.getProperty("result", "SUCCESS")),
+                Long.parseLong(properties.getProperty("armedAt", "0")),
+                Long.parseLong(properties.getProperty("firedAt", "0")));
+    }
+}
@@ -0,0 +1,291 @@
+package join;
+
+import hudson.Extension;
+import hudson.Util;
+import hudson.model.AbstractProject;
+import hudson.model.Api;
+import hudson.model.DependencyGraph;
+import hudson.model.Item;
+import hudson.model.RootAction;
+import hudson.model.listeners.ItemListener;
+import hudson.security.ACL;
+import jenkins.model.Jenkins;
+import net.sf.json.JSONArray;
+import net.sf.json.JSONObject;
+import org.acegisecurity.context.SecurityContext;
+import org.acegisecurity.context.SecurityContextHolder;
+import org.kohsuke.stapler.export.Exported;
+import org.kohsuke.stapler.export.ExportedBean;
+
+import java.io.IOException;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Shows how split, downstream and join projects are wired together, built from the {@link JoinDependency} edges of
+ * the dependency graph, with the average latency of every edge taken from the {@link JoinAnalytics} logs.
+ * <p>
+ * The layout is computed once per dependency graph, i.e. again only after the graph was rebuilt. The latencies of a
+ * split project are read from its analytics logs when it is shown and cached by project name, independent of the
+ * layout, until another join of the project is written to its log or the day changes.
+ */
+@Extension
+@ExportedBean
+public class JoinTopology implements RootAction {
+    private static final Logger LOGGER = Logger.getLogger(JoinTopology.class.getName());
+
+    /**
+     * Number of days of join analytics the edge latencies are averaged over.
+     */
+    public static int LATENCY_DAYS = Integer.getInteger(JoinTopology.class.getName() + ".latencyDays", 30);
+
+    private transient Layout layout;
+
+    /**
+     * Join analytics of the split projects by full name.
+     */
+    private static final ConcurrentMap<String, Latencies> LATENCIES = new ConcurrentHashMap<String, Latencies>();
+
+    public String getDisplayName() {
+        return "Join Topology";
+    }
+
+    public String getIconFileName() {
+        return "graph.png";
+    }
+
+    public String getUrlName() {
+        return "joinTopology";
+    }
+
+    public Api getApi() {
+        return new Api(this);
+    }
+
+    /**
+     * The split projects readable by the current user, by name.
+     */
+    @Exported(inline = true)
+    public List<Split> getSplits() {
+        List<Split> splits = new ArrayList<Split>();
+        for (Split split : getLayout().splits) {
+            if (split.project.hasPermission(Item.READ)) {
+                splits.add(split);
+            }
+        }
+        return splits;
+    }
+
+    synchronized Layout getLayout() {
+        DependencyGraph graph = Jenkins.getInstance().getDependencyGraph();
+        if (layout == null || layout.graph.get() != graph) {
+            // the layout is shared by all users, so it has to contain every project
+            SecurityContext orig = ACL.impersonate(ACL.SYSTEM);
+            try {
+                layout = new Layout(graph);
+            } finally {
+                SecurityContextHolder.setContext(orig);
+            }
+        }
+        return layout;
+    }
+
+    /**
+     * @return the join analytics the latencies of the split project are taken from, read again only if joins of the
+     * project were written since or the day changed.
+     */
+    static JSONObject getLatencies(AbstractProject<?,?> splitProject) {
+        long stamp = JoinAnalytics.stamp(splitProject);
+        long since = System.currentTimeMillis() - TimeUnit.DAYS.toMillis(LATENCY_DAYS);
+        long day = TimeUnit.MILLISECONDS.toDays(since);
+        Latencies latencies = LATENCIES.get(splitProject.getFullName());
+        if (latencies != null && latencies.stamp == stamp && latencies.day == day) {
+            return latencies.analytics;
+        }
+        JSONObject analytics;
+        try {
+            analytics = JoinAnalytics.aggregate(splitProject, TimeUnit.DAYS.toMillis(day));
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Failed to read the join analytics of " + splitProject.getFullName(), e);
+            return new JSONObject();
+        }
+        LATENCIES.put(splitProject.getFullName(), new Latencies(stamp, day, analytics));
+        return analytics;
+    }
+
+    private static final class Latencies {
+        private final long stamp;
+        private final long day;
+        private final JSONObject analytics;
+
+        Latencies(long stamp, long day, JSONObject analytics) {
+            this.stamp = stamp;
+            this.day = day;
+            this.analytics = analytics;
+        }
+    }
+
+    @Extension
+    public static class ItemListenerImpl extends ItemListener {
+        @Override
+        public void onDeleted(Item item) {
+            LATENCIES.remove(item.getFullName());
+        }
+
+        @Override
+        public void onLocationChanged(Item item, String oldFullName, String newFullName) {
+            LATENCIES.remove(oldFullName);
+        }
+    }
+
+    /**
+     * The split projects of one dependency graph with their edges.
+     */
+    static final class Layout {
+        private final WeakReference<DependencyGraph> graph;
+        private final List<Split> splits;
+
+        Layout(DependencyGraph graph) {
+            this.graph = new WeakReference<DependencyGraph>(graph);
+            Map<String, Split> splitsByName = new TreeMap<String, Split>();
+            for (AbstractProject<?,?> project : Jenkins.getInstance().getAllItems(AbstractProject.class)) {
+                for (DependencyGraph.Dependency dependency : graph.getDownstreamDependencies(project)) {
+                    if (!(dependency instanceof JoinDependency)) {
+                        continue;
+                    }
+                    AbstractProject<?,?> splitProject = ((JoinDependency<?>) dependency).getSplitProject();
+                    Split split = splitsByName.get(splitProject.getFullName());
+                    if (split == null) {
+                        split = new Split(splitProject);
+                        splitsByName.put(splitProject.getFullName(), split);
+                    }
+                    if (project != splitProject) {
+                        split.downstream.add(project.getFullName());
+                    }
+                    split.joinProjects.add(dependency.getDownstreamProject().getFullName());
+                }
+            }
+            this.splits = Collections.unmodifiableList(new ArrayList<Split>(splitsByName.values()));
+        }
+    }
+
+    /**
+     * A split project with the edges to its downstream projects (fan-out) and to its join projects (fan-in).
+     */
+    @ExportedBean(defaultVisibility = 2)
+    public static final class Split {
+        private final AbstractProject<?,?> project;
+        private final TreeSet<String> downstream = new TreeSet<String>();
+        private final TreeSet<String> joinProjects = new TreeSet<String>();
+
+        Split(AbstractProject<?,?> project) {
+            this.project = project;
+        }
+
+        @Exported
+        public String getName() {
+            return project.getFullName();
+        }
+
+        public String getUrl() {
+            return project.getUrl();
+        }
+
+        /**
+         * Edges from the split project to its downstream projects readable by the current user, with their average
+         * queue time plus duration.
+         */
+        @Exported(inline = true)
+        public List<Edge> getFanOut() {
+            JSONObject analytics = getLatencies(project);
+            Map<String, Long> childLatencies = new HashMap<String, Long>();
+            JSONArray children = analytics.optJSONArray("children");
+            for (int i = 0; children != null && i < children.size(); i++) {
+                JSONObject child = children.getJSONObject(i);
+                childLatencies.put(child.getString("project"),
+                        child.optLong("averageQueuedMillis") + child.optLong("averageDurationMillis"));
+            }
+            List<Edge> fanOut = new ArrayList<Edge>();
+            for (String name : downstream) {
+                Long latency = childLatencies.get(name);
+                fanOut.add(new Edge(getName(), name, latency != null ? latency : -1));
+            }
+            return readable(fanOut);
+        }
+
+        /**
+         * Edges to the join projects readable by the current user, with the average time between the last downstream build finishing and the
+         * join firing.
+         */
+        @Exported(inline = true)
+        public List<Edge> getFanIn() {
+            JSONObject analytics = getLatencies(project);
+            long idle = analytics.optLong("joins") > 0 ? analytics.optLong("averageIdleMillis") : -1;
+            List<Edge> fanIn = new ArrayList<Edge>();
+            for (String name : joinProjects) {
+                fanIn.add(new Edge(getName(), name, idle));
+            }
+            return readable(fanIn);
+        }
+
+        private static List<Edge> readable(List<Edge> edges) {
+            List<Edge> readable = new ArrayList<Edge>(edges.size());
+            for (Edge edge : edges) {
+                // returns null for items the current user may not read
+                if (Jenkins.getInstance().getItemByFullName(edge.getTo()) != null) {
+                    readable.add(edge);
+                }
+            }
+            return readable;
+        }
+    }
+
+    /**
+     * An edge of the topology.
+     */
+    @ExportedBean(defaultVisibility = 3)
+    public static final class Edge {
+        private final String from;
+        private final String to;
+        private final long averageLatencyMillis;
+
+        Edge(String from, String to, long averageLatencyMillis) {
+            this.from = from;
+            this.to = to;
+            this.averageLatencyMillis = averageLatencyMillis;
+        }
+
+        @Exported
+        public String getFrom() {
+            return from;
+        }
+
+        @Exported
+        public String getTo() {
+            return to;
+        }
+
+        /**
+         * Average latency in milliseconds, or -1 if no join of the split project was recorded yet.
+         */
+        @Exported
+        public long getAverageLatencyMillis() {
+            return averageLatencyMillis;
+        }
+
+        public String getAverageLatency() {
+            return averageLatencyMillis < 0 ? "-" : Util.getTimeSpanString(averageLatencyMillis);
+        }
+    }
+}
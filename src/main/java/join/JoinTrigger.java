@@ -26,33 +26,32 @@ package join;
 import hudson.EnvVars;
 import hudson.Extension;
 import hudson.Launcher;
-import hudson.Plugin;
 import hudson.Util;
 import hudson.matrix.MatrixAggregatable;
 import hudson.matrix.MatrixAggregator;
 import hudson.matrix.MatrixBuild;
 import hudson.model.AbstractBuild;
 import hudson.model.AbstractProject;
+import hudson.model.Action;
 import hudson.model.AutoCompletionCandidates;
 import hudson.model.BuildListener;
 import hudson.model.Result;
-import hudson.model.Cause;
-import hudson.model.Cause.UpstreamCause;
 import hudson.model.CauseAction;
 import hudson.model.DependecyDeclarer;
 import hudson.model.DependencyGraph;
 import hudson.model.Descriptor;
-import hudson.model.Hudson;
 import hudson.model.Item;
 import hudson.model.ItemGroup;
 import hudson.model.Items;
+import hudson.model.ParameterValue;
+import hudson.model.ParametersAction;
 import hudson.model.Project;
 import hudson.model.Run;
 import hudson.model.Saveable;
 import hudson.model.TaskListener;
 import hudson.model.listeners.ItemListener;
 import hudson.model.listeners.RunListener;
-import hudson.plugins.downstream_ext.DownstreamTrigger;
+import hudson.plugins.parameterizedtrigger.AbstractBuildParameters;
 import hudson.plugins.parameterizedtrigger.BuildTriggerConfig;
 import hudson.tasks.BuildStep;
 import hudson.tasks.BuildStepDescriptor;
@@ -62,11 +61,8 @@ import hudson.tasks.Publisher;
 import hudson.tasks.Recorder;
 import hudson.util.DescribableList;
 import hudson.util.FormValidation;
-import join.JoinAction.JoinCause;
 import net.sf.json.JSONObject;
 import org.apache.commons.lang.StringUtils;
-import org.jenkins_ci.plugins.flexible_publish.ConditionalPublisher;
-import org.jenkins_ci.plugins.flexible_publish.FlexiblePublisher;
 import org.kohsuke.stapler.AncestorInPath;
 import org.kohsuke.stapler.QueryParameter;
 import org.kohsuke.stapler.StaplerRequest;
@@ -74,6 +70,7 @@ import org.kohsuke.stapler.StaplerRequest;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
 import java.util.StringTokenizer;
 import java.util.logging.Level;
@@ -94,6 +91,33 @@ public class JoinTrigger extends Recorder implements DependecyDeclarer, MatrixAg
     private transient boolean evenIfDownstreamUnstable;
     private Result resultThreshold;
 
+    /**
+     * Seconds during which join firings of other split builds of this project are merged into the first one.
+     */
+    private int coalesceWindow;
+
+    /**
+     * Whether join publishers are run concurrently, each one limited to {@link #publisherTimeout} seconds.
+     */
+    private boolean parallelPublishers;
+    private int publisherTimeout;
+
+    /**
+     * Whether the parameters of parameterized join triggers are resolved once when the split build runs.
+     */
+    private boolean captureParameters;
+
+    /**
+     * Comma separated names of parameters or build variables collected from the downstream builds and passed to
+     * the join build.
+     */
+    private String aggregateParameters;
+
+    /**
+     * Whether the artifact fingerprints of the downstream builds are passed to the join build.
+     */
+    private boolean aggregateFingerprints;
+
     public JoinTrigger() {
         this(new DescribableList<Publisher, Descriptor<Publisher>>(Saveable.NOOP), "", "SUCCESS");
     }
@@ -117,16 +141,36 @@ public class JoinTrigger extends Recorder implements DependecyDeclarer, MatrixAg
     @Override
     public boolean perform(AbstractBuild<?, ?> build, Launcher launcher,
             BuildListener listener) throws InterruptedException, IOException {
-        BuildTrigger buildTrigger = build.getProject().getPublishersList().get(BuildTrigger.class);
-        JoinAction joinAction = new JoinAction(this, getAllDownstream(build.getProject(), build.getEnvironment(listener)));
-        build.addAction(joinAction);
+        JoinAction joinAction = build.getAction(JoinAction.class);
+        if (joinAction == null) {
+            joinAction = new JoinAction(this, getAllDownstream(build, listener));
+            build.addAction(joinAction);
+        } else if (joinAction.isOpen()) {
+            // armed by a build step registering downstream projects
+            joinAction.close(getAllDownstream(build, listener));
+        } else {
+            listener.getLogger().println("[Join] The join of this build was already completed by a build step");
+            return true;
+        }
+        if (captureParameters) {
+            captureJoinParameters(build, listener, joinAction);
+        }
         joinAction.checkPendingDownstream(build, listener);
         return true;
     }
 
     @Override
     public void buildDependencyGraph(AbstractProject owner, DependencyGraph graph) {
+        for (JoinDependency<?> dependency : JoinEdgeCache.getDependencies(owner, this)) {
+            graph.addDependency(dependency);
+        }
+    }
 
+    /**
+     * @return the join dependencies of the owner, from each of its downstream projects to each join project.
+     */
+    List<JoinDependency<?>> createDependencies(AbstractProject<?,?> owner) {
+        List<JoinDependency<?>> dependencies = new ArrayList<JoinDependency<?>>();
         final List<AbstractProject<?,?>> downstreamProjects = getAllDownstream(owner, null);
         // If there is no intermediate project add the split project and use it as
         // the one triggering the downstream build
@@ -137,128 +181,61 @@ public class JoinTrigger extends Recorder implements DependecyDeclarer, MatrixAg
         for (AbstractProject<?,?> downstreamProject: downstreamProjects) {
             for (BuildTriggerConfig config : getBuildTriggerConfigs(joinPublishers)) {
                 for (AbstractProject<?,?> joinProject : config.getProjectList(owner.getParent(), null)) {
-                    ParameterizedJoinDependency dependency =
-                            new ParameterizedJoinDependency(downstreamProject, joinProject, owner, config);
-                    graph.addDependency(dependency);
+                    dependencies.add(JoinEdgeCache.parameterizedJoinDependency(downstreamProject, joinProject, owner, config));
                 }
             }
 
             for (AbstractProject<?,?> joinProject : getJoinProjects(owner.getParent())) {
-                JoinTriggerDependency dependency =
-                        new JoinTriggerDependency(downstreamProject, joinProject, owner, resultThreshold);
-                graph.addDependency(dependency);
-            }
-        }
-    }
-
-    private List<String> tryGetParameterizedDownstreamNames(AbstractBuild<?, ?> build, BuildListener listener) {
-        ArrayList<String> ret = new ArrayList<String>();
-        EnvVars env = null;
-        try {
-            env = build.getEnvironment(listener);
-        } catch (Exception e) {
-            listener.getLogger().print(e);
-        }
-
-        for (AbstractProject<?,?> project :
-                getParameterizedDownstreamProjects(build.getProject().getParent(), build.getProject().getPublishersList(), env)) {
-            if (!project.isDisabled()) {
-                ret.add(project.getName());
+                dependencies.add(JoinEdgeCache.joinTriggerDependency(downstreamProject, joinProject, owner, resultThreshold));
             }
         }
-        return ret;
+        return dependencies;
     }
 
-    private List<AbstractProject<?,?>> getParameterizedDownstreamProjects(
-            ItemGroup context,
-            DescribableList<Publisher,Descriptor<Publisher>> publishers, EnvVars env) {
-        List<AbstractProject<?,?>> ret = new ArrayList<AbstractProject<?,?>>();
-        for(hudson.plugins.parameterizedtrigger.BuildTriggerConfig config :
-                getBuildTriggerConfigs(publishers)) {
-            for (AbstractProject<?,?> project : config.getProjectList(context, env)) {
-                ret.add(project);
+    /**
+     * Resolves the parameters of the parameterized join triggers while the split build is still running, so they
+     * can be reused when the join fires. Configs using parameter factories, contributing actions other than
+     * parameters or deciding not to trigger are resolved when the join fires as usual, since only parameters are
+     * kept with the join.
+     */
+    private void captureJoinParameters(AbstractBuild<?,?> build, BuildListener listener, JoinAction joinAction) {
+        for (BuildTriggerConfig config : getBuildTriggerConfigs(joinPublishers)) {
+            if (config.getConfigFactories() != null && !config.getConfigFactories().isEmpty()) {
+                continue;
             }
-        }
-        return ret;
-    }
-
-    private List<BuildTriggerConfig> getBuildTriggerConfigs(
-            DescribableList<Publisher,Descriptor<Publisher>> publishers) {
-        List<BuildTriggerConfig> ret = new ArrayList<BuildTriggerConfig>();
-        Plugin parameterizedTrigger = Jenkins.getInstance().getPlugin("parameterized-trigger");
-        if (parameterizedTrigger != null) {
-            hudson.plugins.parameterizedtrigger.BuildTrigger buildTrigger =
-                publishers.get(hudson.plugins.parameterizedtrigger.BuildTrigger.class);
-            if (buildTrigger != null) {
-                for(hudson.plugins.parameterizedtrigger.BuildTriggerConfig config : buildTrigger.getConfigs()) {
-                    ret.add(config);
+            List<ParameterValue> values = new ArrayList<ParameterValue>();
+            Action otherAction = null;
+            try {
+                for (AbstractBuildParameters parameters : config.getConfigs()) {
+                    Action action = parameters.getAction(build, listener);
+                    if (action instanceof ParametersAction) {
+                        values.addAll(((ParametersAction) action).getParameters());
+                    } else if (action != null) {
+                        otherAction = action;
+                        break;
+                    }
                 }
+            } catch (AbstractBuildParameters.DontTriggerException e) {
+                continue;
+            } catch (Exception e) {
+                listener.getLogger().println("[Join] Unable to capture parameters for " + config.getProjects()
+                        + ", resolving them when the join fires: " + e);
+                continue;
             }
-        }
-        return ret;
-    }
-
-    private List<AbstractProject<?,?>> getDownstreamExtDownstream(
-            ItemGroup context,
-            DescribableList<Publisher,Descriptor<Publisher>> publishers) {
-        List<AbstractProject<?,?>> ret = new ArrayList<AbstractProject<?, ?>>();
-        Plugin extDownstream = Jenkins.getInstance().getPlugin("downstream-ext");
-        if (extDownstream != null) {
-            DownstreamTrigger buildTrigger =
-                publishers.get(DownstreamTrigger.class);
-            if (buildTrigger != null) {
-                for (AbstractProject<?,?> project : buildTrigger.getChildProjects(context)) {
-                    ret.add(project);
-                }
+            if (otherAction != null) {
+                listener.getLogger().println("[Join] Parameters for " + config.getProjects() + " contribute "
+                        + otherAction.getClass().getSimpleName() + ", resolving them when the join fires");
+                continue;
             }
-        }
-        return ret;
-    }
-
-    private Collection<? extends AbstractProject<?, ?>> getParameterizedDownstreamInFlexiblePublisher(
-        AbstractProject<?, ?> project) {
-        
-        DescribableList<Publisher, Descriptor<Publisher>> publishers = project.getPublishersList();
-        List<AbstractProject<?, ?>> ret = new ArrayList<AbstractProject<?, ?>>();
-        Plugin flexiblePublisherPlugin = Jenkins.getInstance().getPlugin("flexible-publish");
-        Plugin parameterizedTrigger = Jenkins.getInstance().getPlugin("parameterized-trigger");
-        
-        if (flexiblePublisherPlugin == null || parameterizedTrigger == null) {
-        	return ret;
-        }
-        
-        FlexiblePublisher flexiblePublisher = publishers.get(FlexiblePublisher.class);
-        
-        if (flexiblePublisher != null ) {
-        
-            for (ConditionalPublisher conditionalPublisher : flexiblePublisher.getPublishers()) {
-                for (BuildStep buildStep : conditionalPublisher.getPublisherList()) {
-                    if (buildStep instanceof hudson.plugins.parameterizedtrigger.BuildTrigger) {
-                    
-                        ret.addAll(GetProjectFromBuildTriggerConfigs(buildStep));
-                    }
-                }
+            if (!values.isEmpty()) {
+                joinAction.captureParameters(JoinConfigStore.digest(config), values);
             }
         }
-        
-        return ret;
     }
 
-    private Collection<? extends AbstractProject<?, ?>> GetProjectFromBuildTriggerConfigs(
-            Object buildTrigger) {
-        
-        List<AbstractProject<?, ?>> ret = new ArrayList<AbstractProject<?, ?>>();
-        
-        for (hudson.model.Project p : Hudson.getInstance().getProjects()) {
-    
-            for (BuildTriggerConfig config : ((hudson.plugins.parameterizedtrigger.BuildTrigger )buildTrigger).getConfigs()) {
-                if (p.getName().equals(config.getProjects())) {
-                    ret.add(p);
-                }
-            }
-        }
-        
-        return ret;
+    private List<BuildTriggerConfig> getBuildTriggerConfigs(
+            DescribableList<Publisher,Descriptor<Publisher>> publishers) {
+        return JoinIntegrations.get().parameterizedTrigger.getConfigs(publishers);
     }
 
     static boolean canDeclare(AbstractProject<?,?> owner) {
@@ -267,24 +244,29 @@ public class JoinTrigger extends Recorder implements DependecyDeclarer, MatrixAg
     }
 
 
+    /**
+     * @return the downstream projects found by all {@link DownstreamDiscovery} extensions, memoized per project.
+     */
     public List<AbstractProject<?,?>> getAllDownstream(AbstractProject<?,?> project, EnvVars env) {
-        List<AbstractProject<?,?>> downstream = getBuildTriggerDownstream(project);
-        downstream.addAll(getParameterizedDownstreamInFlexiblePublisher(project));
-        downstream.addAll(getParameterizedDownstreamProjects(project.getParent(), project.getPublishersList(), env));
-        downstream.addAll(getDownstreamExtDownstream(project.getParent(), project.getPublishersList()));
-        return downstream;
+        return DownstreamCache.getDownstream(project, env);
     }
     
 
+    /**
+     * @return the downstream projects of the build expanded with its environment, computed once per build.
+     */
+    public List<AbstractProject<?,?>> getAllDownstream(AbstractBuild<?,?> build, TaskListener listener)
+            throws IOException, InterruptedException {
+        return DownstreamCache.getDownstream(build, listener);
+    }
+
     public List<AbstractProject<?,?>> getBuildTriggerDownstream(AbstractProject<?,?> project) {
-        ArrayList<AbstractProject<?,?>> ret = new ArrayList<AbstractProject<?,?>>();
-        BuildTrigger buildTrigger = project.getPublishersList().get(BuildTrigger.class);
-        if (buildTrigger != null) {
-            for (AbstractProject<?,?> childProject : buildTrigger.getChildProjects(project.getParent())) {
-                ret.add(childProject);
-            }
-        }
-        return ret;
+        return new DownstreamDiscovery.BuildTriggerDiscovery().getDownstream(project, null);
+    }
+
+    @Override
+    public Collection<? extends Action> getProjectActions(AbstractProject<?, ?> project) {
+        return Collections.singleton(new JoinProjectAction(project));
     }
 
     @Override
@@ -340,9 +322,16 @@ public class JoinTrigger extends Recorder implements DependecyDeclarer, MatrixAg
 
             // Remove trailing "," inserted by YUI autocompletion
             String joinProjectsValue = reformatJoinProjectsValue(formData.getString("joinProjectsValue"));
-            return new JoinTrigger(publishers,
+            JoinTrigger joinTrigger = new JoinTrigger(publishers,
                     joinProjectsValue,
                     formData.getString("resultThreshold"));
+            joinTrigger.setCoalesceWindow(formData.optInt("coalesceWindow", 0));
+            joinTrigger.setParallelPublishers(formData.optBoolean("parallelPublishers"));
+            joinTrigger.setPublisherTimeout(formData.optInt("publisherTimeout", 0));
+            joinTrigger.setCaptureParameters(formData.optBoolean("captureParameters"));
+            joinTrigger.setAggregateParameters(formData.optString("aggregateParameters"));
+            joinTrigger.setAggregateFingerprints(formData.optBoolean("aggregateFingerprints"));
+            return joinTrigger;
         }
 
         public String reformatJoinProjectsValue(String joinProjectsValue) {
@@ -385,13 +374,7 @@ public class JoinTrigger extends Recorder implements DependecyDeclarer, MatrixAg
         }
 
         public List<Descriptor<Publisher>> getApplicableDescriptors() {
-            ArrayList<Descriptor<Publisher>> list = new ArrayList<Descriptor<Publisher>>();
-            Plugin parameterizedTrigger = Jenkins.getInstance().getPlugin("parameterized-trigger");
-            if (parameterizedTrigger != null) {
-                list.add(Jenkins.getInstance().getDescriptorByType(hudson.plugins.parameterizedtrigger.BuildTrigger.DescriptorImpl.class));
-            }
-            list.add(Jenkins.getInstance().getDescriptorByType(hudson.tasks.Mailer.DescriptorImpl.class));
-            return list;
+            return JoinIntegrations.get().applicableDescriptors;
         }
 
         /**
@@ -452,44 +435,8 @@ public class JoinTrigger extends Recorder implements DependecyDeclarer, MatrixAg
                     listener.getLogger().println("Join notifier requires a CauseAction");
                     return;
                 }
-                for(Cause c : ca.getCauses()) {
-                    if (!(c instanceof UpstreamCause)) { continue; }
-                    if (c instanceof JoinCause) { continue; }
-                    UpstreamCause uc = (UpstreamCause)c;
-                    notifyJob(abstractBuild, listener, uc.getUpstreamProject(), uc.getUpstreamBuild());
-                }
-                return;
-            }
-
-            private void notifyJob(AbstractBuild<?,?> abstractBuild, TaskListener listener, String upstreamProjectName,
-                    int upstreamJobNumber) {
-                List<AbstractProject> upstreamList = Items.fromNameList(abstractBuild.getProject().getParent(), upstreamProjectName,AbstractProject.class);
-                if(upstreamList.size() != 1) {
-                    listener.getLogger().println("Join notifier cannot find upstream project: " + upstreamProjectName);
-                    return;
-                }
-                AbstractProject<?,?> upstreamProject = upstreamList.get(0);
-                Run upstreamRun = upstreamProject.getBuildByNumber(upstreamJobNumber);
-
-                if(upstreamRun == null) {
-                    listener.getLogger().println("Join notifier cannot find upstream run: " + upstreamProjectName + " number " + upstreamJobNumber);
-                    return;
-                }
-                if(!(upstreamRun instanceof AbstractBuild)) {
-                    LOGGER.fine("Upstream run is not an AbstractBuild: " + upstreamProjectName + " number " + upstreamJobNumber);
-                    return;
-                }
-
-                AbstractBuild<?,?> upstreamBuild = (AbstractBuild<?,?>)upstreamRun;
-                JoinAction ja = upstreamRun.getAction(JoinAction.class);
-                if(ja == null) {
-                    // does not go in the build log, since this is normal for any downstream project that
-                    // runs without the join plugin enabled
-                    LOGGER.finer("Join notifier cannot find upstream JoinAction: " + upstreamProjectName + " number " + upstreamJobNumber);
-                    return;
-                }
-                listener.getLogger().println("Notifying upstream of completion: " + upstreamProjectName + " #" + upstreamJobNumber);
-                ja.downstreamFinished(upstreamBuild, abstractBuild, listener);
+                JoinCompletionDispatcher.dispatch(abstractBuild, listener);
+                JoinCompletionDispatcher.triggerUndeclaredJoins(abstractBuild, listener);
             }
 
         }
@@ -557,6 +504,67 @@ public class JoinTrigger extends Recorder implements DependecyDeclarer, MatrixAg
         return this.resultThreshold;
     }
 
+    public int getCoalesceWindow() {
+        return coalesceWindow;
+    }
+
+    public void setCoalesceWindow(int coalesceWindow) {
+        this.coalesceWindow = Math.max(0, coalesceWindow);
+    }
+
+    public boolean isParallelPublishers() {
+        return parallelPublishers;
+    }
+
+    public void setParallelPublishers(boolean parallelPublishers) {
+        this.parallelPublishers = parallelPublishers;
+    }
+
+    public boolean isCaptureParameters() {
+        return captureParameters;
+    }
+
+    public void setCaptureParameters(boolean captureParameters) {
+        this.captureParameters = captureParameters;
+    }
+
+    public String getAggregateParameters() {
+        return aggregateParameters;
+    }
+
+    public void setAggregateParameters(String aggregateParameters) {
+        this.aggregateParameters = Util.fixEmptyAndTrim(aggregateParameters);
+    }
+
+    /**
+     * @return the names of the parameters collected from the downstream builds.
+     */
+    public List<String> getAggregateParameterNames() {
+        List<String> names = new ArrayList<String>();
+        for (String name : Util.fixNull(aggregateParameters).split(",")) {
+            if (StringUtils.isNotBlank(name)) {
+                names.add(name.trim());
+            }
+        }
+        return names;
+    }
+
+    public boolean isAggregateFingerprints() {
+        return aggregateFingerprints;
+    }
+
+    public void setAggregateFingerprints(boolean aggregateFingerprints) {
+        this.aggregateFingerprints = aggregateFingerprints;
+    }
+
+    public int getPublisherTimeout() {
+        return publisherTimeout;
+    }
+
+    public void setPublisherTimeout(int publisherTimeout) {
+        this.publisherTimeout = Math.max(0, publisherTimeout);
+    }
+
     private Object readResolve() {
         if(this.joinPublishers == null) {
             this.joinPublishers = new DescribableList<Publisher,Descriptor<Publisher>>(Saveable.NOOP);
@@ -42,9 +42,9 @@ class JoinTriggerDependency extends JoinDependency<DependencyGraph.Dependency> {
     }
 
     @Override
-    public int hashCode() {
+    protected int computeHashCode() {
         int hash = 3;
-        hash = 71 * hash + super.hashCode();
+        hash = 71 * hash + super.computeHashCode();
         if(this.resultThreshold != null) {
             hash = 71 * hash + this.resultThreshold.ordinal + 1;
         }
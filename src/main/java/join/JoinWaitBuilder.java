@@ -0,0 +1,104 @@
+package join;
+
+import hudson.Extension;
+import hudson.Launcher;
+import hudson.model.AbstractBuild;
+import hudson.model.AbstractProject;
+import hudson.model.BuildListener;
+import hudson.model.Result;
+import hudson.tasks.BuildStepDescriptor;
+import hudson.tasks.Builder;
+import org.kohsuke.stapler.DataBoundConstructor;
+import org.kohsuke.stapler.DataBoundSetter;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Build step waiting for the downstream builds registered by the build itself, see
+ * {@link JoinRegistrationBuilder}, so later build steps can use the join result.
+ * <p>
+ * The step closes the join of the build and sleeps until the completion of the last downstream build fires it,
+ * instead of polling. The combined result of the downstream builds is applied to the build.
+ * <p>
+ * The step fails if the {@link JoinTrigger} of the project has downstream projects, since these only start after the
+ * build finished and would never be waited for. It also fails if the downstream builds did not complete within the
+ * timeout, since the build keeps its executor while waiting.
+ */
+public class JoinWaitBuilder extends Builder {
+    /**
+     * Seconds to wait for the downstream builds, 0 to wait as long as they take.
+     */
+    private int timeout;
+
+    @DataBoundConstructor
+    public JoinWaitBuilder() {
+    }
+
+    public int getTimeout() {
+        return timeout;
+    }
+
+    @DataBoundSetter
+    public void setTimeout(int timeout) {
+        this.timeout = Math.max(0, timeout);
+    }
+
+    @Override
+    public boolean perform(AbstractBuild<?, ?> build, Launcher launcher, BuildListener listener)
+            throws InterruptedException, IOException {
+        JoinAction joinAction = build.getAction(JoinAction.class);
+        if (joinAction == null || !joinAction.isOpen()) {
+            listener.getLogger().println("[Join] No downstream projects registered to wait for");
+            return true;
+        }
+        JoinTrigger joinTrigger = build.getProject().getPublishersList().get(JoinTrigger.class);
+        if (joinTrigger != null) {
+            List<AbstractProject<?,?>> downstream = joinTrigger.getAllDownstream(build, listener);
+            if (!downstream.isEmpty()) {
+                List<String> names = new ArrayList<String>();
+                for (AbstractProject<?,?> project : downstream) {
+                    names.add(project.getFullName());
+                }
+                listener.error("[Join] Cannot wait for the join, the downstream projects " + names
+                        + " of the join trigger only start after this build finished");
+                return false;
+            }
+        }
+        joinAction.close();
+        joinAction.checkPendingDownstream(build, listener);
+        listener.getLogger().println("[Join] Waiting for " + joinAction.getPendingDownstreamProjects());
+        if (!joinAction.awaitFired(TimeUnit.SECONDS.toMillis(timeout))) {
+            listener.error("[Join] Downstream builds " + joinAction.getPendingDownstreamProjects()
+                    + " did not complete within " + timeout + " seconds");
+            return false;
+        }
+
+        Result result = joinAction.getOverallResult();
+        listener.getLogger().println("[Join] Downstream builds finished with " + result);
+        if (result.isWorseThan(Result.SUCCESS)) {
+            build.setResult(result);
+        }
+        return true;
+    }
+
+    @Extension
+    public static class DescriptorImpl extends BuildStepDescriptor<Builder> {
+        @Override
+        public String getDisplayName() {
+            return "Wait for join";
+        }
+
+        @Override
+        public String getHelpFile() {
+            return "/plugin/join/help/waitForJoin.html";
+        }
+
+        @Override
+        public boolean isApplicable(Class<? extends AbstractProject> jobType) {
+            return true;
+        }
+    }
+}
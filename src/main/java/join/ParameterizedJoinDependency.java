@@ -1,12 +1,21 @@
 package join;
 
+import hudson.model.AbstractBuild;
 import hudson.model.AbstractProject;
+import hudson.model.Action;
+import hudson.model.ParameterDefinition;
+import hudson.model.ParameterValue;
+import hudson.model.ParametersAction;
+import hudson.model.ParametersDefinitionProperty;
 import hudson.model.Result;
+import hudson.model.TaskListener;
 import hudson.plugins.parameterizedtrigger.BuildTriggerConfig;
 import hudson.plugins.parameterizedtrigger.ParameterizedDependency;
 import hudson.plugins.parameterizedtrigger.ResultCondition;
 
 import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -37,6 +46,44 @@ class ParameterizedJoinDependency extends JoinDependency<ParameterizedDependency
         return true;
     }
 
+    /**
+     * Uses the parameters captured when the split build ran, if any, instead of resolving them again.
+     */
+    @Override
+    protected boolean splitDependencyShouldTriggerBuild(AbstractBuild<?,?> splitBuild, JoinAction joinAction,
+            TaskListener listener, List<Action> actions) {
+        List<ParameterValue> captured = joinAction.getCapturedParameters(JoinConfigStore.digest(config));
+        if (captured == null) {
+            return super.splitDependencyShouldTriggerBuild(splitBuild, joinAction, listener, actions);
+        }
+        if (!conditionIsMet(splitBuild.getResult())) {
+            return false;
+        }
+        List<ParameterValue> values = new ArrayList<ParameterValue>(captured);
+        ParametersDefinitionProperty definitions = getDownstreamProject().getProperty(ParametersDefinitionProperty.class);
+        if (definitions != null) {
+            for (ParameterDefinition definition : definitions.getParameterDefinitions()) {
+                if (!containsParameter(values, definition.getName())) {
+                    ParameterValue defaultValue = definition.getDefaultParameterValue();
+                    if (defaultValue != null) {
+                        values.add(defaultValue);
+                    }
+                }
+            }
+        }
+        actions.add(new ParametersAction(values));
+        return true;
+    }
+
+    private static boolean containsParameter(List<ParameterValue> values, String name) {
+        for (ParameterValue value : values) {
+            if (value.getName().equals(name)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     @Override
     public boolean equals(Object obj) {
         if (obj == null) {
@@ -56,12 +103,10 @@ class ParameterizedJoinDependency extends JoinDependency<ParameterizedDependency
     }
 
     @Override
-    public int hashCode() {
+    protected int computeHashCode() {
         int hash = 5;
-        hash = 61 * hash + super.hashCode();
+        hash = 61 * hash + super.computeHashCode();
         hash = 61 * hash + (this.config != null ? this.config.hashCode() : 0);
         return hash;
     }
-
-
 }
@@ -0,0 +1,91 @@
+package join;
+
+import hudson.EnvVars;
+import hudson.model.AbstractProject;
+import hudson.model.FreeStyleBuild;
+import hudson.model.FreeStyleProject;
+import hudson.model.TaskListener;
+import hudson.tasks.BuildTrigger;
+import org.jvnet.hudson.test.TestExtension;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+public class DownstreamDiscoveryTest extends BasicJoinPluginTest {
+
+    public void testDownstreamFollowsConfigChanges() throws Exception {
+        FreeStyleProject first = createFreeStyleProjectWithNoQuietPeriod();
+        FreeStyleProject second = createFreeStyleProjectWithNoQuietPeriod();
+        addJoinTriggerToSplitProject(splitProject, joinProject);
+        addProjectToSplitProject(splitProject, first);
+        final JoinTrigger joinTrigger = splitProject.getPublishersList().get(JoinTrigger.class);
+
+        assertEquals(Collections.singletonList(first), joinTrigger.getAllDownstream(splitProject, null));
+
+        splitProject.getPublishersList().replace(new BuildTrigger(second.getName(), false));
+        assertEquals(Collections.singletonList(second), joinTrigger.getAllDownstream(splitProject, null));
+    }
+
+    public void testDownstreamFollowsCreatedItems() throws Exception {
+        addJoinTriggerToSplitProject(splitProject, joinProject);
+        addProjectToSplitProject(splitProject, "lateProject");
+        final JoinTrigger joinTrigger = splitProject.getPublishersList().get(JoinTrigger.class);
+
+        assertTrue(joinTrigger.getAllDownstream(splitProject, null).isEmpty());
+
+        FreeStyleProject lateProject = createFreeStyleProject("lateProject");
+        assertEquals(Collections.singletonList(lateProject), joinTrigger.getAllDownstream(splitProject, null));
+    }
+
+    public void testCustomDiscovery() throws Exception {
+        FreeStyleProject customProject = createFreeStyleProject("customProject");
+        addJoinTriggerToSplitProject(splitProject, joinProject);
+        final JoinTrigger joinTrigger = splitProject.getPublishersList().get(JoinTrigger.class);
+
+        assertEquals(Collections.singletonList(customProject), joinTrigger.getAllDownstream(splitProject, null));
+    }
+
+    public void testEnvironmentExpandedOncePerBuild() throws Exception {
+        FreeStyleProject customProject = createFreeStyleProject("customProject");
+        addJoinTriggerToSplitProject(splitProject, joinProject);
+        final JoinTrigger joinTrigger = splitProject.getPublishersList().get(JoinTrigger.class);
+
+        final FreeStyleBuild splitBuild = buildAndAssertSuccess(splitProject);
+        waitUntilNoActivity();
+        assertEquals(1, EnvironmentDiscovery.expansions);
+
+        assertEquals(Collections.singletonList(customProject), joinTrigger.getAllDownstream(splitBuild, TaskListener.NULL));
+        assertEquals(1, EnvironmentDiscovery.expansions);
+    }
+
+    @TestExtension("testEnvironmentExpandedOncePerBuild")
+    public static class EnvironmentDiscovery extends CustomDiscovery {
+        static int expansions;
+
+        @Override
+        public List<AbstractProject<?,?>> getDownstream(AbstractProject<?,?> project, EnvVars env) {
+            if (env != null) {
+                expansions++;
+            }
+            return super.getDownstream(project, env);
+        }
+
+        @Override
+        public boolean dependsOnEnvironment(AbstractProject<?,?> project) {
+            return true;
+        }
+    }
+
+    @TestExtension("testCustomDiscovery")
+    public static class CustomDiscovery extends DownstreamDiscovery {
+        @Override
+        public List<AbstractProject<?,?>> getDownstream(AbstractProject<?,?> project, EnvVars env) {
+            List<AbstractProject<?,?>> ret = new ArrayList<AbstractProject<?,?>>();
+            if (project.getName().equals("splitProject")) {
+                ret.add((AbstractProject<?,?>) project.getParent().getItem("customProject"));
+            }
+            return ret;
+        }
+    }
+}
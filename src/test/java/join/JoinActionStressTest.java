@@ -0,0 +1,177 @@
+package join;
+
+import hudson.model.Cause.UserCause;
+import hudson.model.FreeStyleBuild;
+import hudson.model.FreeStyleProject;
+import hudson.model.Result;
+import hudson.model.Run;
+import hudson.model.TaskListener;
+import hudson.util.NullStream;
+import hudson.util.StreamTaskListener;
+import org.jvnet.hudson.test.TestExtension;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Replays thousands of interleaved downstream completions for a single split build across many threads, through
+ * {@link JoinAction#downstreamFinished} for local builds as well as single and batched received completions, so the
+ * fire check and the flushes of the split build race with the recording.
+ * <p>
+ * Every completion is notified twice, as happens through the run listener and the dependency graph. The schedules
+ * are randomized from a fixed seed, a failing schedule is rerun with the seed and
+ * <code>-Djoin.stress.schedules=1</code> given in the failure message.
+ */
+public class JoinActionStressTest extends BasicJoinPluginTest {
+    private static final int CHILDREN = Integer.getInteger("join.stress.children", 500);
+    private static final int LOCAL_CHILDREN = Integer.getInteger("join.stress.localChildren", 10);
+    private static final int THREADS = Integer.getInteger("join.stress.threads", 16);
+    private static final int SCHEDULES = Integer.getInteger("join.stress.schedules", 5);
+    private static final long SEED = Long.getLong("join.stress.seed", 20150401L);
+    private static final int MAX_BATCH = 5;
+
+    static volatile JoinAction stressedAction;
+    static final AtomicInteger fired = new AtomicInteger();
+
+    public void testJoinFiresExactlyOnceWithoutLostCompletions() throws Exception {
+        final List<FreeStyleBuild> localBuilds = new ArrayList<FreeStyleBuild>();
+        for (int i = 0; i < LOCAL_CHILDREN; i++) {
+            FreeStyleProject project = createFreeStyleProjectWithNoQuietPeriod();
+            if (i % 3 == 0) {
+                project.getPublishersList().add(new ResultSetter(Result.UNSTABLE));
+            }
+            localBuilds.add(project.scheduleBuild2(0, new UserCause()).get());
+        }
+        long seed = SEED;
+        for (int i = 0; i < SCHEDULES; i++) {
+            runSchedule(seed, localBuilds);
+            seed = new Random(seed).nextLong();
+        }
+    }
+
+    private void runSchedule(final long seed, List<FreeStyleBuild> localBuilds) throws Exception {
+        final String schedule = "schedule -Djoin.stress.seed=" + seed + " -Djoin.stress.schedules=1";
+        final FreeStyleBuild splitBuild = splitProject.scheduleBuild2(0, new UserCause()).get();
+        final String reference = JoinCompletionTransport.reference(splitBuild);
+
+        final List<String> pending = new ArrayList<String>();
+        final List<Object> notifications = new ArrayList<Object>();
+        for (FreeStyleBuild build : localBuilds) {
+            pending.add(build.getProject().getFullName());
+            notifications.add(build);
+            notifications.add(build);
+        }
+        for (int i = 0; i < CHILDREN; i++) {
+            // every tenth project is triggered twice to have repeated project names pending
+            String project = "child" + (i % 10 == 1 ? i - 1 : i);
+            pending.add(project);
+            JoinCompletionEvent event = new JoinCompletionEvent(reference, "remote", project, i,
+                    i % 7 == 0 ? Result.UNSTABLE : Result.SUCCESS, 0, 0);
+            notifications.add(event);
+            notifications.add(event);
+        }
+        notifications.add(new JoinCompletionEvent(reference, "remote", "unrelated", 1, Result.FAILURE, 0, 0));
+
+        final JoinAction joinAction = new JoinAction(new JoinTrigger(), pending);
+        splitBuild.addAction(joinAction);
+        stressedAction = joinAction;
+        fired.set(0);
+
+        final Random random = new Random(seed);
+        Collections.shuffle(notifications, random);
+        final List<List<Object>> schedules = new ArrayList<List<Object>>();
+        for (int i = 0; i < THREADS; i++) {
+            schedules.add(new ArrayList<Object>());
+        }
+        for (Object notification : notifications) {
+            schedules.get(random.nextInt(THREADS)).add(notification);
+        }
+
+        final TaskListener listener = new StreamTaskListener(new NullStream());
+        final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+        final CyclicBarrier barrier = new CyclicBarrier(THREADS);
+        List<Thread> threads = new ArrayList<Thread>();
+        for (int i = 0; i < THREADS; i++) {
+            final List<Object> threadSchedule = schedules.get(i);
+            final long threadSeed = seed + i;
+            Thread thread = new Thread("JoinActionStressTest-" + i) {
+                @Override
+                public void run() {
+                    Random choices = new Random(threadSeed);
+                    try {
+                        barrier.await();
+                        List<JoinCompletionEvent> batch = new ArrayList<JoinCompletionEvent>();
+                        int batchSize = 1 + choices.nextInt(MAX_BATCH);
+                        for (Object notification : threadSchedule) {
+                            if (choices.nextInt(4) == 0) {
+                                Thread.yield();
+                            }
+                            if (notification instanceof FreeStyleBuild) {
+                                joinAction.downstreamFinished(splitBuild, (FreeStyleBuild) notification, listener);
+                            } else {
+                                batch.add((JoinCompletionEvent) notification);
+                                if (batch.size() >= batchSize) {
+                                    notifyBatch(batch);
+                                    batchSize = 1 + choices.nextInt(MAX_BATCH);
+                                }
+                            }
+                            if (choices.nextInt(10) == 0) {
+                                joinAction.checkPendingDownstream(splitBuild, listener);
+                            }
+                        }
+                        notifyBatch(batch);
+                    } catch (Throwable t) {
+                        failure.compareAndSet(null, t);
+                    }
+                }
+
+                private void notifyBatch(List<JoinCompletionEvent> batch) {
+                    if (batch.size() == 1) {
+                        joinAction.downstreamFinished(splitBuild, batch.get(0), listener);
+                    } else if (!batch.isEmpty()) {
+                        joinAction.downstreamFinished(splitBuild, new ArrayList<JoinCompletionEvent>(batch), listener);
+                    }
+                    batch.clear();
+                }
+            };
+            threads.add(thread);
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        final Throwable thrown = failure.get();
+        if (thrown != null) {
+            throw new AssertionError(schedule + " failed: " + thrown);
+        }
+        final int completed = CHILDREN + localBuilds.size();
+        assertEquals(schedule, 1, fired.get());
+        assertTrue(schedule, joinAction.getPendingDownstreamProjects().isEmpty());
+        assertEquals(schedule, completed, joinAction.getCompletedDownstreamProjects().size());
+        assertEquals(schedule, Result.UNSTABLE, joinAction.getOverallResult());
+
+        // waits for the flushes still writing and writes what they did not
+        joinAction.flush(splitBuild);
+        final JoinSummary summary = JoinSummary.read(splitBuild.getNumber(), splitBuild.getRootDir());
+        assertNotNull(schedule, summary);
+        assertEquals(schedule, JoinSummary.Status.FIRED, summary.getStatus());
+        assertEquals(schedule, 0, summary.getPendingCount());
+        assertEquals(schedule, completed, summary.getCompletedCount());
+    }
+
+    @TestExtension("testJoinFiresExactlyOnceWithoutLostCompletions")
+    public static class FiredCounter extends JoinCompletionListener {
+        @Override
+        public void onFired(Run<?,?> splitBuild, JoinAction joinAction) {
+            if (joinAction == stressedAction) {
+                fired.incrementAndGet();
+            }
+        }
+    }
+}
@@ -0,0 +1,54 @@
+package join;
+
+import hudson.model.Cause.UserCause;
+import hudson.model.FreeStyleProject;
+import net.sf.json.JSONArray;
+import net.sf.json.JSONObject;
+import org.apache.commons.io.FileUtils;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+public class JoinAnalyticsTest extends BasicJoinPluginTest {
+
+    public void testAnalytics() throws Exception {
+        List<FreeStyleProject> intermediateProjects = createFreeStyleProjects(2);
+        addJoinTriggerToSplitProject(splitProject, joinProject);
+        addProjectsToSplitProject(splitProject, intermediateProjects);
+        hudson.rebuildDependencyGraph();
+
+        for (int i = 0; i < 3; i++) {
+            splitProject.scheduleBuild2(0, new UserCause()).get();
+            waitUntilNoActivity();
+        }
+
+        final JSONObject analytics = JoinAnalytics.aggregate(splitProject, 0);
+        assertEquals(3, analytics.getInt("joins"));
+        final JSONArray children = analytics.getJSONArray("children");
+        assertEquals(2, children.size());
+        int lastToFinish = 0;
+        for (int i = 0; i < children.size(); i++) {
+            assertEquals(3, children.getJSONObject(i).getInt("builds"));
+            lastToFinish += children.getJSONObject(i).getInt("lastToFinish");
+        }
+        assertEquals(3, lastToFinish);
+
+        final String json = createWebClient().goTo(splitProject.getUrl() + "joinHistory/analytics?days=1", "application/json")
+                .getWebResponse().getContentAsString();
+        assertEquals(3, JSONObject.fromObject(json).getInt("joins"));
+    }
+
+    public void testAnalyticsRotatedByMonth() throws Exception {
+        final long now = System.currentTimeMillis();
+        final long lastYear = now - TimeUnit.DAYS.toMillis(365);
+        FileUtils.writeStringToFile(JoinAnalytics.getFile(splitProject, lastYear),
+                "{\"build\":1,\"armedAt\":" + lastYear + ",\"firedAt\":" + lastYear + "}\n", "UTF-8");
+        FileUtils.writeStringToFile(JoinAnalytics.getFile(splitProject, now),
+                "{\"build\":2,\"armedAt\":" + now + ",\"firedAt\":" + now + "}\n", "UTF-8");
+
+        assertEquals(2, JoinAnalytics.aggregate(splitProject, 0).getInt("joins"));
+        // the log of last year is not read anymore
+        assertEquals(1, JoinAnalytics.getFiles(splitProject, now).size());
+        assertEquals(1, JoinAnalytics.aggregate(splitProject, now).getInt("joins"));
+    }
+}
@@ -0,0 +1,101 @@
+package join;
+
+import hudson.model.AbstractProject;
+import hudson.model.Action;
+import hudson.model.ParametersAction;
+import hudson.model.StringParameterValue;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class JoinCoalescerTest {
+    private long now = 1000000L;
+
+    @Before
+    public void setUp() {
+        JoinCoalescer.reset();
+        JoinCoalescer.clock = new JoinCoalescer.Clock() {
+            public long now() {
+                return now;
+            }
+        };
+    }
+
+    @After
+    public void tearDown() {
+        JoinCoalescer.clock = JoinCoalescer.SYSTEM_CLOCK;
+        JoinCoalescer.reset();
+    }
+
+    @Test
+    public void firingFoldedIntoQueuedItemIsMerged() {
+        JoinAction first = newJoinAction();
+        JoinAction second = newJoinAction();
+        String key = JoinCoalescer.key("split", "join", null);
+        long closesAt = JoinCoalescer.open(key, 60000);
+
+        assertEquals(now + 60000, closesAt);
+        assertEquals("Window stays open for later firings", closesAt, JoinCoalescer.open(key, 60000));
+        assertNull(JoinCoalescer.scheduled(key, first, "split #1", 1, true));
+        assertNull("Same split build should still fire", JoinCoalescer.scheduled(key, first, "split #1", 1, false));
+        assertSame(first, JoinCoalescer.scheduled(key, second, "split #2", 1, false));
+        assertEquals(Collections.singletonList("split #2"), first.getCoalescedBuilds());
+    }
+
+    @Test
+    public void firingAfterJoinStartedSchedulesAgain() {
+        JoinAction first = newJoinAction();
+        JoinAction second = newJoinAction();
+        String key = JoinCoalescer.key("split", "join", null);
+        JoinCoalescer.open(key, 60000);
+
+        assertNull(JoinCoalescer.scheduled(key, first, "split #1", 1, true));
+        assertNull("Join build already left the queue", JoinCoalescer.scheduled(key, second, "split #2", 2, true));
+        assertTrue(first.getCoalescedBuilds().isEmpty());
+    }
+
+    @Test
+    public void differentParametersAreNotCoalesced() {
+        List<Action> one = Collections.<Action>singletonList(new ParametersAction(new StringParameterValue("KEY", "one")));
+        List<Action> two = Collections.<Action>singletonList(new ParametersAction(new StringParameterValue("KEY", "two")));
+        String keyOne = JoinCoalescer.key("split", "join", one);
+        String keyTwo = JoinCoalescer.key("split", "join", two);
+        assertFalse(keyOne.equals(keyTwo));
+
+        JoinAction first = newJoinAction();
+        JoinCoalescer.open(keyOne, 60000);
+        JoinCoalescer.open(keyTwo, 60000);
+        assertNull(JoinCoalescer.scheduled(keyOne, first, "split #1", 1, true));
+        assertNull(JoinCoalescer.scheduled(keyTwo, newJoinAction(), "split #2", 2, true));
+        assertTrue(first.getCoalescedBuilds().isEmpty());
+    }
+
+    @Test
+    public void parameterOrderIsIrrelevant() {
+        ParametersAction ab = new ParametersAction(new StringParameterValue("A", "1"), new StringParameterValue("B", "2"));
+        ParametersAction ba = new ParametersAction(new StringParameterValue("B", "2"), new StringParameterValue("A", "1"));
+        assertEquals(JoinCoalescer.parametersKey(ab), JoinCoalescer.parametersKey(ba));
+    }
+
+    @Test
+    public void expiredWindowOpensAgain() {
+        JoinAction first = newJoinAction();
+        String key = JoinCoalescer.key("split", "join", null);
+        long closesAt = JoinCoalescer.open(key, 1000);
+        assertNull(JoinCoalescer.scheduled(key, first, "split #1", 1, true));
+
+        now = closesAt;
+        assertEquals(now + 1000, JoinCoalescer.open(key, 1000));
+        assertNull("Expired window no longer merges", JoinCoalescer.scheduled(key, newJoinAction(), "split #2", 1, false));
+        assertTrue(first.getCoalescedBuilds().isEmpty());
+    }
+
+    private static JoinAction newJoinAction() {
+        return new JoinAction(new JoinTrigger(), Collections.<AbstractProject<?,?>>emptyList());
+    }
+}
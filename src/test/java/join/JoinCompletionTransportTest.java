@@ -0,0 +1,272 @@
+package join;
+
+import hudson.Launcher;
+import hudson.model.AbstractBuild;
+import hudson.model.AbstractProject;
+import hudson.model.BuildListener;
+import hudson.model.Cause.UserCause;
+import hudson.model.Descriptor;
+import hudson.model.FreeStyleBuild;
+import hudson.model.Result;
+import hudson.model.Saveable;
+import hudson.model.TaskListener;
+import hudson.tasks.BuildStepDescriptor;
+import hudson.tasks.BuildStepMonitor;
+import hudson.tasks.Publisher;
+import hudson.tasks.Recorder;
+import hudson.util.DescribableList;
+import hudson.util.StreamTaskListener;
+import org.jvnet.hudson.test.TestBuilder;
+import org.jvnet.hudson.test.TestExtension;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+public class JoinCompletionTransportTest extends BasicJoinPluginTest {
+
+    public void testJoinOnRemoteProjectThroughSpool() throws Exception {
+        File spool = createTmpDir();
+        System.setProperty(FileSpoolTransport.class.getName() + ".dir", spool.getPath());
+        try {
+            splitProject.getBuildersList().add(new JoinRegistrationBuilder("remote:shard", null));
+            addJoinTriggerToSplitProject(splitProject, joinProject);
+            hudson.rebuildDependencyGraph();
+
+            final FreeStyleBuild splitBuild = splitProject.scheduleBuild2(0, new UserCause()).get();
+            waitUntilNoActivity();
+            assertNotBuilt(joinProject);
+            assertEquals(Collections.singletonList("shard"),
+                    splitBuild.getAction(JoinAction.class).getPendingDownstreamProjects());
+
+            JoinCompletionTransport transport =
+                    jenkins.getExtensionList(JoinCompletionTransport.class).get(FileSpoolTransport.class);
+            JoinCompletionEvent event = new JoinCompletionEvent(JoinCompletionTransport.reference(splitBuild),
+                    "other", "shard", 7, Result.SUCCESS, 0, 10);
+            transport.send(event);
+            transport.send(event);
+            assertEquals(1, transport.receive(10).size());
+            JoinCompletionReceiver.drain(TaskListener.NULL);
+            waitUntilNoActivity();
+            getUniqueBuild(joinProject);
+
+            // acknowledged events are not delivered again
+            transport.send(event);
+            assertTrue(transport.receive(10).isEmpty());
+            JoinCompletionReceiver.drain(TaskListener.NULL);
+            waitUntilNoActivity();
+            getUniqueBuild(joinProject);
+
+            // until their acknowledgement expired
+            final FileSpoolTransport spoolTransport = (FileSpoolTransport) transport;
+            assertEquals(0, spoolTransport.prune(System.currentTimeMillis()));
+            assertEquals(1, spoolTransport.prune(System.currentTimeMillis()
+                    + TimeUnit.HOURS.toMillis(FileSpoolTransport.ACK_RETENTION) + 1000));
+            transport.send(event);
+            assertEquals(1, transport.receive(10).size());
+        } finally {
+            System.clearProperty(FileSpoolTransport.class.getName() + ".dir");
+        }
+    }
+
+    public void testCompletionOfUnexpectedProjectDropped() throws Exception {
+        File spool = createTmpDir();
+        System.setProperty(FileSpoolTransport.class.getName() + ".dir", spool.getPath());
+        try {
+            splitProject.getBuildersList().add(new JoinRegistrationBuilder("remote:shard", null));
+            addJoinTriggerToSplitProject(splitProject, joinProject);
+            hudson.rebuildDependencyGraph();
+
+            final FreeStyleBuild splitBuild = splitProject.scheduleBuild2(0, new UserCause()).get();
+            waitUntilNoActivity();
+            JoinCompletionTransport transport =
+                    jenkins.getExtensionList(JoinCompletionTransport.class).get(FileSpoolTransport.class);
+            transport.send(new JoinCompletionEvent(JoinCompletionTransport.reference(splitBuild),
+                    "other", "unrelated", 1, Result.FAILURE, 0, 10));
+            JoinCompletionReceiver.drain(TaskListener.NULL);
+            waitUntilNoActivity();
+
+            final JoinAction joinAction = splitBuild.getAction(JoinAction.class);
+            assertEquals(Collections.singletonList("shard"), joinAction.getPendingDownstreamProjects());
+            assertTrue(joinAction.getCompletedDownstreamProjects().isEmpty());
+            assertEquals(Result.SUCCESS, joinAction.getOverallResult());
+            // dropped events are acknowledged
+            assertTrue(transport.receive(10).isEmpty());
+        } finally {
+            System.clearProperty(FileSpoolTransport.class.getName() + ".dir");
+        }
+    }
+
+    public void testRemoteCompletionTriggersJoinOnceWhileSplitBuildRuns() throws Exception {
+        File spool = createTmpDir();
+        System.setProperty(FileSpoolTransport.class.getName() + ".dir", spool.getPath());
+        try {
+            jenkins.setNumExecutors(2);
+            final JoinCompletionTransport transport =
+                    jenkins.getExtensionList(JoinCompletionTransport.class).get(FileSpoolTransport.class);
+            splitProject.getBuildersList().add(new JoinRegistrationBuilder("remote:shard", null));
+            splitProject.getBuildersList().add(new TestBuilder() {
+                @Override
+                public boolean perform(final AbstractBuild<?, ?> build, Launcher launcher, BuildListener listener) {
+                    // the remote build completes while the split build waits for it
+                    new Thread("remote shard") {
+                        @Override
+                        public void run() {
+                            try {
+                                while (JoinAction.of(build).isOpen()) {
+                                    Thread.sleep(100);
+                                }
+                                transport.send(new JoinCompletionEvent(JoinCompletionTransport.reference(build),
+                                        "other", "shard", 1, Result.SUCCESS, 0, 10));
+                                JoinCompletionReceiver.drain(TaskListener.NULL);
+                            } catch (Exception e) {
+                                throw new AssertionError(e);
+                            }
+                        }
+                    }.start();
+                    return true;
+                }
+            });
+            splitProject.getBuildersList().add(new JoinWaitBuilder());
+            // keep the split build running until the join build triggered by the receiver finished
+            splitProject.getBuildersList().add(new TestBuilder() {
+                @Override
+                public boolean perform(AbstractBuild<?, ?> build, Launcher launcher, BuildListener listener)
+                        throws InterruptedException {
+                    long deadline = System.currentTimeMillis() + TimeUnit.MINUTES.toMillis(1);
+                    while (joinProject.getLastCompletedBuild() == null && System.currentTimeMillis() < deadline) {
+                        Thread.sleep(100);
+                    }
+                    return true;
+                }
+            });
+            addJoinTriggerToSplitProject(splitProject, joinProject);
+            hudson.rebuildDependencyGraph();
+
+            final FreeStyleBuild splitBuild = splitProject.scheduleBuild2(0, new UserCause()).get();
+            waitUntilNoActivity();
+            assertBuildStatusSuccess(splitBuild);
+            final FreeStyleBuild joinBuild = getUniqueBuild(joinProject);
+            assertFinished(splitBuild).afterFinished(joinBuild);
+        } finally {
+            System.clearProperty(FileSpoolTransport.class.getName() + ".dir");
+        }
+    }
+
+    public void testLocalCompletionKeptUntilJoinArmed() throws Exception {
+        final long retryDelay = JoinCompletionQueue.RETRY_DELAY;
+        JoinCompletionQueue.RETRY_DELAY = 100;
+        try {
+            splitProject.getBuildersList().add(new TestBuilder() {
+                @Override
+                public boolean perform(AbstractBuild<?, ?> build, Launcher launcher, BuildListener listener) {
+                    // completes before the split build registers the project and arms its join
+                    JoinCompletionQueue.submit(new JoinCompletionEvent(JoinCompletionTransport.reference(build),
+                            "other", "shard", 1, Result.SUCCESS, 0, 10), listener);
+                    return true;
+                }
+            });
+            splitProject.getBuildersList().add(new JoinRegistrationBuilder("remote:shard", null));
+            addJoinTriggerToSplitProject(splitProject, joinProject);
+            hudson.rebuildDependencyGraph();
+
+            final FreeStyleBuild splitBuild = splitProject.scheduleBuild2(0, new UserCause()).get();
+            long deadline = System.currentTimeMillis() + TimeUnit.MINUTES.toMillis(1);
+            while (joinProject.getLastCompletedBuild() == null && System.currentTimeMillis() < deadline) {
+                Thread.sleep(100);
+            }
+            waitUntilNoActivity();
+
+            final JoinAction joinAction = splitBuild.getAction(JoinAction.class);
+            assertTrue(joinAction.getPendingDownstreamProjects().isEmpty());
+            assertEquals(Collections.singletonList("shard"), joinAction.getCompletedDownstreamProjects());
+            getUniqueBuild(joinProject);
+        } finally {
+            JoinCompletionQueue.RETRY_DELAY = retryDelay;
+        }
+    }
+
+    public void testCompletionsOfOneSplitBuildAppliedAsBatch() throws Exception {
+        File spool = createTmpDir();
+        System.setProperty(FileSpoolTransport.class.getName() + ".dir", spool.getPath());
+        try {
+            splitProject.getBuildersList().add(new JoinRegistrationBuilder("remote:shard, remote:shard, remote:shard", null));
+            addJoinTriggerToSplitProject(splitProject, joinProject);
+            hudson.rebuildDependencyGraph();
+
+            final FreeStyleBuild splitBuild = splitProject.scheduleBuild2(0, new UserCause()).get();
+            waitUntilNoActivity();
+            JoinCompletionTransport transport =
+                    jenkins.getExtensionList(JoinCompletionTransport.class).get(FileSpoolTransport.class);
+            for (int number = 1; number <= 3; number++) {
+                transport.send(new JoinCompletionEvent(JoinCompletionTransport.reference(splitBuild),
+                        "other", "shard", number, Result.SUCCESS, 0, 10));
+            }
+            ByteArrayOutputStream log = new ByteArrayOutputStream();
+            JoinCompletionReceiver.drain(new StreamTaskListener(log));
+            waitUntilNoActivity();
+
+            getUniqueBuild(joinProject);
+            assertTrue(log.toString(), log.toString().contains("[Join] 3 downstream builds finished"));
+            assertTrue(transport.receive(10).isEmpty());
+        } finally {
+            System.clearProperty(FileSpoolTransport.class.getName() + ".dir");
+        }
+    }
+
+    public void testForwardedCompletionRunsJoinPublishers() throws Exception {
+        File spool = createTmpDir();
+        System.setProperty(FileSpoolTransport.class.getName() + ".dir", spool.getPath());
+        try {
+            splitProject.getBuildersList().add(new JoinRegistrationBuilder("remote:shard", null));
+            splitProject.getPublishersList().add(new JoinTrigger(new DescribableList<Publisher, Descriptor<Publisher>>(
+                    Saveable.NOOP, Collections.singletonList(new MarkerPublisher())), "", "SUCCESS"));
+
+            final FreeStyleBuild splitBuild = splitProject.scheduleBuild2(0, new UserCause()).get();
+            waitUntilNoActivity();
+            assertNull(MarkerPublisher.performedFor);
+
+            JoinCompletionTransport transport =
+                    jenkins.getExtensionList(JoinCompletionTransport.class).get(FileSpoolTransport.class);
+            transport.send(new JoinCompletionEvent(JoinCompletionTransport.reference(splitBuild),
+                    "other", "shard", 1, Result.SUCCESS, 0, 10));
+            JoinCompletionReceiver.drain(TaskListener.NULL);
+
+            assertSame(splitBuild, MarkerPublisher.performedFor);
+            assertTrue(splitBuild.getLog().contains(MarkerPublisher.MARKER));
+        } finally {
+            System.clearProperty(FileSpoolTransport.class.getName() + ".dir");
+            MarkerPublisher.performedFor = null;
+        }
+    }
+
+    public static class MarkerPublisher extends Recorder {
+        static final String MARKER = "[MarkerPublisher] performed";
+        static volatile AbstractBuild<?,?> performedFor;
+
+        public BuildStepMonitor getRequiredMonitorService() {
+            return BuildStepMonitor.NONE;
+        }
+
+        @Override
+        public boolean perform(AbstractBuild<?, ?> build, Launcher launcher, BuildListener listener) {
+            listener.getLogger().println(MARKER);
+            performedFor = build;
+            return true;
+        }
+
+        @TestExtension("testForwardedCompletionRunsJoinPublishers")
+        public static class DescriptorImpl extends BuildStepDescriptor<Publisher> {
+            @Override
+            public boolean isApplicable(Class<? extends AbstractProject> jobType) {
+                return true;
+            }
+
+            @Override
+            public String getDisplayName() {
+                return "Marker";
+            }
+        }
+    }
+}
@@ -0,0 +1,117 @@
+package join;
+
+import hudson.XmlFile;
+import hudson.model.Cause.UserCause;
+import hudson.model.FreeStyleBuild;
+import hudson.model.FreeStyleProject;
+import hudson.model.Result;
+import hudson.plugins.parameterizedtrigger.PredefinedBuildParameters;
+
+import org.apache.commons.io.FileUtils;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+
+public class JoinConfigStoreTest extends BasicJoinPluginTest {
+
+    @Override
+    public void setUp() throws Exception {
+        super.setUp();
+        JoinAction.COMPACT_CONFIG = true;
+    }
+
+    @Override
+    public void tearDown() throws Exception {
+        JoinAction.COMPACT_CONFIG = false;
+        JoinConfigStore.clear();
+        super.tearDown();
+    }
+
+    public void testIdenticalConfigsStoredOnce() throws Exception {
+        addParameterizedJoinTriggerToProject(splitProject, joinProject, new PredefinedBuildParameters("KEY=value"));
+        FreeStyleProject intermediateProject = createFreeStyleProjectWithNoQuietPeriod();
+        addProjectToSplitProject(splitProject, intermediateProject);
+        hudson.rebuildDependencyGraph();
+
+        final FreeStyleBuild firstBuild = splitProject.scheduleBuild2(0, new UserCause()).get();
+        waitUntilNoActivity();
+        final FreeStyleBuild secondBuild = splitProject.scheduleBuild2(0, new UserCause()).get();
+        waitUntilNoActivity();
+
+        final String[] configs = new File(hudson.getRootDir(), "join-configs").list();
+        assertNotNull(configs);
+        assertEquals(1, configs.length);
+        for (FreeStyleBuild build : new FreeStyleBuild[] {firstBuild, secondBuild}) {
+            final String buildXml = new XmlFile(new File(build.getRootDir(), "build.xml")).asString();
+            assertTrue(buildXml, buildXml.contains("<configDigest>"));
+            assertFalse(buildXml, buildXml.contains("<joinPublishers"));
+            assertEquals(1, build.getAction(JoinAction.class).getJoinPublishers().size());
+        }
+        assertEquals(2, joinProject.getBuilds().size());
+    }
+
+    public void testSnapshotReloadedFromDisk() throws Exception {
+        addParameterizedJoinTriggerToProject(splitProject, joinProject, new PredefinedBuildParameters("KEY=value"));
+        hudson.rebuildDependencyGraph();
+        splitProject.scheduleBuild2(0, new UserCause()).get();
+        waitUntilNoActivity();
+
+        JoinConfigStore.clear();
+        splitProject.getPublishersList().remove(JoinTrigger.class);
+        hudson.reload();
+
+        final JoinAction joinAction = reloadedSplitBuild().getAction(JoinAction.class);
+        assertEquals(1, joinAction.getJoinPublishers().size());
+        assertEquals(Result.SUCCESS, joinAction.getResultThreshold());
+    }
+
+    public void testMissingSnapshotFallsBackToProjectConfig() throws Exception {
+        addParameterizedJoinTriggerToProject(splitProject, joinProject, new PredefinedBuildParameters("KEY=value"));
+        hudson.rebuildDependencyGraph();
+        splitProject.scheduleBuild2(0, new UserCause()).get();
+        waitUntilNoActivity();
+
+        JoinConfigStore.clear();
+        for (File config : configFiles()) {
+            assertTrue(config.delete());
+        }
+        hudson.reload();
+
+        final JoinAction joinAction = reloadedSplitBuild().getAction(JoinAction.class);
+        assertEquals(1, joinAction.getJoinPublishers().size());
+    }
+
+    public void testOrphanedSnapshotsSwept() throws Exception {
+        addParameterizedJoinTriggerToProject(splitProject, joinProject, new PredefinedBuildParameters("KEY=value"));
+        hudson.rebuildDependencyGraph();
+        splitProject.scheduleBuild2(0, new UserCause()).get();
+        waitUntilNoActivity();
+
+        final File referenced = configFiles()[0];
+        final File orphaned = new File(referenced.getParentFile(), "0123456789abcdef.xml");
+        FileUtils.copyFile(referenced, orphaned);
+        final long now = System.currentTimeMillis();
+        final long expired = now - TimeUnit.HOURS.toMillis(JoinConfigStore.ORPHAN_GRACE + 1);
+        assertEquals("stored recently", 0, JoinConfigStore.sweep(now));
+        JoinConfigStore.clear();
+        assertTrue(referenced.setLastModified(expired));
+        assertTrue(orphaned.setLastModified(expired));
+
+        assertEquals(1, JoinConfigStore.sweep(now));
+        assertTrue(referenced.exists());
+        assertFalse(orphaned.exists());
+    }
+
+    private File[] configFiles() {
+        final File[] configs = new File(hudson.getRootDir(), "join-configs").listFiles();
+        assertNotNull(configs);
+        assertEquals(1, configs.length);
+        return configs;
+    }
+
+    private FreeStyleBuild reloadedSplitBuild() {
+        final FreeStyleProject project = hudson.getItemByFullName(splitProject.getFullName(), FreeStyleProject.class);
+        assertNotSame(splitProject, project);
+        return project.getBuildByNumber(1);
+    }
+}
@@ -0,0 +1,69 @@
+package join;
+
+import hudson.model.AbstractProject;
+import hudson.model.DependencyGraph;
+import hudson.model.Descriptor;
+import hudson.model.FreeStyleProject;
+import hudson.model.Result;
+import hudson.model.Saveable;
+import hudson.tasks.Publisher;
+import hudson.util.DescribableList;
+
+public class JoinEdgeCacheTest extends BasicJoinPluginTest {
+
+    public void testJoinEdgesReusedUntilProjectChanges() throws Exception {
+        FreeStyleProject intermediateProject = createFreeStyleProjectWithNoQuietPeriod();
+        addJoinTriggerToSplitProject(splitProject, joinProject);
+        addProjectToSplitProject(splitProject, intermediateProject);
+        hudson.rebuildDependencyGraph();
+        final DependencyGraph.Dependency edge = getJoinEdge(intermediateProject);
+
+        hudson.rebuildDependencyGraph();
+        assertSame(edge, getJoinEdge(intermediateProject));
+
+        // recreated after the project changed, but interned
+        splitProject.save();
+        hudson.rebuildDependencyGraph();
+        assertSame(edge, getJoinEdge(intermediateProject));
+
+        splitProject.getPublishersList().replace(new JoinTrigger(new DescribableList<Publisher, Descriptor<Publisher>>(
+                Saveable.NOOP), joinProject.getName(), Result.UNSTABLE.toString()));
+        hudson.rebuildDependencyGraph();
+        assertFalse(edge.equals(getJoinEdge(intermediateProject)));
+    }
+
+    public void testJoinEdgesOfDeletedProjectDropped() throws Exception {
+        FreeStyleProject intermediateProject = createFreeStyleProjectWithNoQuietPeriod();
+        addJoinTriggerToSplitProject(splitProject, joinProject);
+        addProjectToSplitProject(splitProject, intermediateProject);
+        hudson.rebuildDependencyGraph();
+        final String name = splitProject.getFullName();
+        assertTrue(JoinEdgeCache.isCached(name));
+
+        splitProject.delete();
+        assertFalse(JoinEdgeCache.isCached(name));
+    }
+
+    public void testConfigSubmitOnlyInvalidatesSubmittedProject() throws Exception {
+        FreeStyleProject otherSplitProject = createFreeStyleProjectWithNoQuietPeriod();
+        addJoinTriggerToSplitProject(splitProject, joinProject);
+        addJoinTriggerToSplitProject(otherSplitProject, joinProject);
+        final String splitStamp = DownstreamCache.stamp(splitProject);
+        final String otherStamp = DownstreamCache.stamp(otherSplitProject);
+
+        submit(createWebClient().getPage(otherSplitProject, "configure").getFormByName("config"));
+
+        assertEquals(splitStamp, DownstreamCache.stamp(splitProject));
+        assertFalse(otherStamp.equals(DownstreamCache.stamp(otherSplitProject)));
+    }
+
+    private DependencyGraph.Dependency getJoinEdge(AbstractProject<?,?> project) {
+        for (DependencyGraph.Dependency dependency : hudson.getDependencyGraph().getDownstreamDependencies(project)) {
+            if (dependency instanceof JoinDependency) {
+                return dependency;
+            }
+        }
+        fail("No join dependency from " + project.getFullName());
+        return null;
+    }
+}
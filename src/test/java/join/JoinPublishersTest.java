@@ -0,0 +1,120 @@
+package join;
+
+import hudson.Launcher;
+import hudson.model.AbstractBuild;
+import hudson.model.AbstractProject;
+import hudson.model.BuildListener;
+import hudson.model.FreeStyleBuild;
+import hudson.tasks.BuildStepDescriptor;
+import hudson.tasks.BuildStepMonitor;
+import hudson.tasks.Publisher;
+import hudson.tasks.Recorder;
+import hudson.util.StreamTaskListener;
+import org.jvnet.hudson.test.TestExtension;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.TimeUnit;
+
+public class JoinPublishersTest extends BasicJoinPluginTest {
+
+    public void testPublishersRunInParallel() throws Exception {
+        final FreeStyleBuild splitBuild = buildAndAssertSuccess(splitProject);
+        // each publisher only completes once the other one is running as well
+        final CyclicBarrier barrier = new CyclicBarrier(2);
+        final List<Publisher> publishers = Arrays.<Publisher>asList(
+                new RecordingPublisher("first", barrier, 0), new RecordingPublisher("second", barrier, 0));
+        final ByteArrayOutputStream log = new ByteArrayOutputStream();
+
+        JoinPublishers.performInParallel(publishers, splitBuild, new StreamTaskListener(log), 10);
+
+        assertEquals(2, RecordingPublisher.performed.size());
+        assertFalse(log.toString(), log.toString().contains("failed"));
+        assertFalse(log.toString(), log.toString().contains("timed out"));
+    }
+
+    public void testTimedOutPublisherDoesNotStopOthers() throws Exception {
+        final FreeStyleBuild splitBuild = buildAndAssertSuccess(splitProject);
+        final List<Publisher> publishers = Arrays.<Publisher>asList(
+                new RecordingPublisher("hanging", null, TimeUnit.MINUTES.toMillis(10)),
+                new RecordingPublisher("quick", null, 0));
+        final ByteArrayOutputStream log = new ByteArrayOutputStream();
+
+        final long start = System.currentTimeMillis();
+        JoinPublishers.performInParallel(publishers, splitBuild, new StreamTaskListener(log), 1);
+
+        assertTrue(System.currentTimeMillis() - start < TimeUnit.MINUTES.toMillis(1));
+        assertEquals(Arrays.asList("quick"), RecordingPublisher.performed);
+        assertTrue(log.toString(), log.toString().contains("timed out after 1 seconds"));
+        assertTrue(log.toString(), log.toString().contains("done"));
+    }
+
+    public void testPublishersRunSeriallyByDefault() throws Exception {
+        final FreeStyleBuild splitBuild = buildAndAssertSuccess(splitProject);
+        final List<Publisher> publishers = Arrays.<Publisher>asList(
+                new RecordingPublisher("first", null, 100), new RecordingPublisher("second", null, 0));
+
+        JoinPublishers.perform(publishers, splitBuild, new StreamTaskListener(new ByteArrayOutputStream()));
+
+        assertEquals(Arrays.asList("first", "second"), RecordingPublisher.performed);
+        assertEquals(Arrays.asList(Thread.currentThread().getName(), Thread.currentThread().getName()),
+                RecordingPublisher.threads);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        RecordingPublisher.performed.clear();
+        RecordingPublisher.threads.clear();
+        super.tearDown();
+    }
+
+    public static class RecordingPublisher extends Recorder {
+        static final List<String> performed = new CopyOnWriteArrayList<String>();
+        static final List<String> threads = new CopyOnWriteArrayList<String>();
+
+        private final String name;
+        private final transient CyclicBarrier barrier;
+        private final long sleepMillis;
+
+        RecordingPublisher(String name, CyclicBarrier barrier, long sleepMillis) {
+            this.name = name;
+            this.barrier = barrier;
+            this.sleepMillis = sleepMillis;
+        }
+
+        public BuildStepMonitor getRequiredMonitorService() {
+            return BuildStepMonitor.NONE;
+        }
+
+        @Override
+        public boolean perform(AbstractBuild<?, ?> build, Launcher launcher, BuildListener listener) throws InterruptedException {
+            threads.add(Thread.currentThread().getName());
+            if (barrier != null) {
+                try {
+                    barrier.await(10, TimeUnit.SECONDS);
+                } catch (Exception e) {
+                    return false;
+                }
+            }
+            Thread.sleep(sleepMillis);
+            performed.add(name);
+            return true;
+        }
+
+        @TestExtension
+        public static class DescriptorImpl extends BuildStepDescriptor<Publisher> {
+            @Override
+            public boolean isApplicable(Class<? extends AbstractProject> jobType) {
+                return true;
+            }
+
+            @Override
+            public String getDisplayName() {
+                return "Recording";
+            }
+        }
+    }
+}
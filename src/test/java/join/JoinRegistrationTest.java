@@ -0,0 +1,177 @@
+package join;
+
+import hudson.Launcher;
+import hudson.model.AbstractBuild;
+import hudson.model.BuildListener;
+import hudson.model.Cause;
+import hudson.model.Cause.UserCause;
+import hudson.model.FreeStyleBuild;
+import hudson.model.FreeStyleProject;
+import hudson.model.Result;
+import hudson.model.Run;
+import hudson.tasks.BuildTrigger;
+import org.jvnet.hudson.test.TestBuilder;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+public class JoinRegistrationTest extends BasicJoinPluginTest {
+
+    public void testJoinWaitsForProjectRegisteredByDownstreamBuild() throws Exception {
+        FreeStyleProject intermediateProject = createFreeStyleProjectWithNoQuietPeriod();
+        FreeStyleProject shardProject = createFreeStyleProjectWithNoQuietPeriod();
+        intermediateProject.getBuildersList().add(new JoinRegistrationBuilder(shardProject.getName(), null));
+        intermediateProject.getPublishersList().add(new BuildTrigger(shardProject.getName(), false));
+        addJoinTriggerToSplitProject(splitProject, joinProject);
+        addProjectToSplitProject(splitProject, intermediateProject);
+        hudson.rebuildDependencyGraph();
+
+        final FreeStyleBuild splitBuild = splitProject.scheduleBuild2(0, new UserCause()).get();
+        waitUntilNoActivity();
+        final FreeStyleBuild intermediateBuild = getUniqueBuild(intermediateProject);
+        final FreeStyleBuild shardBuild = getUniqueBuild(shardProject);
+        final FreeStyleBuild joinBuild = getUniqueBuild(joinProject);
+        assertInSequence(splitBuild, intermediateBuild, shardBuild, joinBuild);
+        assertEquals(Arrays.asList(intermediateProject.getFullName(), shardProject.getFullName()),
+                splitBuild.getAction(JoinAction.class).getCompletedDownstreamProjects());
+    }
+
+    public void testJoinWaitsForProjectRegisteredBySplitBuild() throws Exception {
+        FreeStyleProject intermediateProject = createFreeStyleProjectWithNoQuietPeriod();
+        FreeStyleProject shardProject = createFreeStyleProjectWithNoQuietPeriod();
+        splitProject.getBuildersList().add(new JoinRegistrationBuilder(shardProject.getName(), null));
+        addJoinTriggerToSplitProject(splitProject, joinProject);
+        addProjectToSplitProject(splitProject, intermediateProject);
+        hudson.rebuildDependencyGraph();
+
+        final FreeStyleBuild splitBuild = splitProject.scheduleBuild2(0, new UserCause()).get();
+        waitUntilNoActivity();
+        getUniqueBuild(intermediateProject);
+        assertNotBuilt(joinProject);
+        assertEquals(Collections.singletonList(shardProject.getFullName()),
+                splitBuild.getAction(JoinAction.class).getPendingDownstreamProjects());
+    }
+
+    public void testRunningJoinSurvivesReloadOfSplitBuild() throws Exception {
+        FreeStyleProject shardProject = createFreeStyleProjectWithNoQuietPeriod();
+        splitProject.getBuildersList().add(new JoinRegistrationBuilder(shardProject.getName(), null));
+        addJoinTriggerToSplitProject(splitProject, joinProject);
+        hudson.rebuildDependencyGraph();
+
+        final FreeStyleBuild splitBuild = splitProject.scheduleBuild2(0, new UserCause()).get();
+        waitUntilNoActivity();
+        final JoinAction joinAction = splitBuild.getAction(JoinAction.class);
+        assertFalse(joinAction.isFired());
+
+        splitProject._getRuns().purgeCache();
+        final FreeStyleBuild reloadedBuild = splitProject.getBuildByNumber(splitBuild.getNumber());
+        assertNotSame(splitBuild, reloadedBuild);
+        assertSame(joinAction, reloadedBuild.getAction(JoinAction.class));
+
+        shardProject.scheduleBuild2(0, new Cause.UpstreamCause((Run<?,?>) reloadedBuild)).get();
+        waitUntilNoActivity();
+        assertTrue(joinAction.isFired());
+        getUniqueBuild(joinProject);
+    }
+
+    public void testRegistrationIsIdempotentAndBounded() throws Exception {
+        final JoinAction joinAction = new JoinAction(new JoinTrigger(), Collections.singletonList("child"));
+        assertTrue(joinAction.registerPendingDownstream(Arrays.asList("shard", "shard"), "partitions"));
+        assertFalse(joinAction.registerPendingDownstream(Arrays.asList("shard", "shard"), "partitions"));
+        assertEquals(Arrays.asList("child", "shard", "shard"), joinAction.getPendingDownstreamProjects());
+
+        try {
+            joinAction.registerPendingDownstream(Collections.nCopies(JoinAction.MAX_REGISTERED, "shard"), "tooMany");
+            fail("Registering more than " + JoinAction.MAX_REGISTERED + " projects should fail");
+        } catch (IllegalStateException e) {
+            // expected
+        }
+        assertEquals(3, joinAction.getPendingDownstreamProjects().size());
+    }
+
+    public void testWaitForJoinWithinSplitBuild() throws Exception {
+        // the split build keeps its executor while waiting
+        jenkins.setNumExecutors(2);
+        final FreeStyleProject shardProject = createUnstableFreeStyleProject();
+        splitProject.getBuildersList().add(new JoinRegistrationBuilder(shardProject.getName(), null));
+        splitProject.getBuildersList().add(new TestBuilder() {
+            @Override
+            public boolean perform(AbstractBuild<?, ?> build, Launcher launcher, BuildListener listener) {
+                shardProject.scheduleBuild(0, new Cause.UpstreamCause((Run<?,?>) build));
+                return true;
+            }
+        });
+        splitProject.getBuildersList().add(new JoinWaitBuilder());
+
+        final FreeStyleBuild splitBuild = splitProject.scheduleBuild2(0, new UserCause()).get();
+        waitUntilNoActivity();
+        final FreeStyleBuild shardBuild = getUniqueBuild(shardProject);
+        assertStarted(splitBuild).beforeStarted(shardBuild);
+        assertFinished(splitBuild).afterFinished(shardBuild);
+        assertBuildStatus(Result.UNSTABLE, splitBuild);
+        assertTrue(splitBuild.getAction(JoinAction.class).isFired());
+    }
+
+    public void testJoinTriggeredOnceWhenSplitBuildOutlivesDownstream() throws Exception {
+        jenkins.setNumExecutors(3);
+        final FreeStyleProject shardProject = createFreeStyleProjectWithNoQuietPeriod();
+        splitProject.getBuildersList().add(new JoinRegistrationBuilder(shardProject.getName(), null));
+        splitProject.getBuildersList().add(new TestBuilder() {
+            @Override
+            public boolean perform(AbstractBuild<?, ?> build, Launcher launcher, BuildListener listener) {
+                shardProject.scheduleBuild(0, new Cause.UpstreamCause((Run<?,?>) build));
+                return true;
+            }
+        });
+        splitProject.getBuildersList().add(new JoinWaitBuilder());
+        // keep the split build running until the join build triggered by the shard build finished
+        splitProject.getBuildersList().add(new TestBuilder() {
+            @Override
+            public boolean perform(AbstractBuild<?, ?> build, Launcher launcher, BuildListener listener)
+                    throws InterruptedException {
+                long deadline = System.currentTimeMillis() + TimeUnit.MINUTES.toMillis(1);
+                while (joinProject.getLastCompletedBuild() == null && System.currentTimeMillis() < deadline) {
+                    Thread.sleep(100);
+                }
+                return true;
+            }
+        });
+        addJoinTriggerToSplitProject(splitProject, joinProject);
+        hudson.rebuildDependencyGraph();
+
+        final FreeStyleBuild splitBuild = splitProject.scheduleBuild2(0, new UserCause()).get();
+        waitUntilNoActivity();
+        final FreeStyleBuild joinBuild = getUniqueBuild(joinProject);
+        assertFinished(splitBuild).afterFinished(joinBuild);
+    }
+
+    public void testWaitForJoinTimesOut() throws Exception {
+        final FreeStyleProject shardProject = createFreeStyleProject();
+        splitProject.getBuildersList().add(new JoinRegistrationBuilder(shardProject.getName(), null));
+        final JoinWaitBuilder waitBuilder = new JoinWaitBuilder();
+        waitBuilder.setTimeout(1);
+        splitProject.getBuildersList().add(waitBuilder);
+
+        final FreeStyleBuild splitBuild = splitProject.scheduleBuild2(0, new UserCause()).get();
+        assertBuildStatus(Result.FAILURE, splitBuild);
+        assertLogContains("did not complete within 1 seconds", splitBuild);
+        assertFalse(splitBuild.getAction(JoinAction.class).isFired());
+    }
+
+    public void testWaitForJoinRejectsJoinTriggerDownstream() throws Exception {
+        final FreeStyleProject shardProject = createFreeStyleProject();
+        final FreeStyleProject downstreamProject = createFreeStyleProject();
+        splitProject.getBuildersList().add(new JoinRegistrationBuilder(shardProject.getName(), null));
+        splitProject.getBuildersList().add(new JoinWaitBuilder());
+        addJoinTriggerToSplitProject(splitProject, joinProject);
+        addProjectToSplitProject(splitProject, downstreamProject.getName());
+        hudson.rebuildDependencyGraph();
+
+        final FreeStyleBuild splitBuild = splitProject.scheduleBuild2(0, new UserCause()).get();
+        waitUntilNoActivity();
+        assertBuildStatus(Result.FAILURE, splitBuild);
+        assertLogContains("only start after this build finished", splitBuild);
+        assertNotBuilt(joinProject);
+    }
+}
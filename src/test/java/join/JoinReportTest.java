@@ -0,0 +1,100 @@
+package join;
+
+import hudson.model.Cause.UserCause;
+import hudson.model.FreeStyleBuild;
+import hudson.model.FreeStyleProject;
+
+import java.util.List;
+
+public class JoinReportTest extends BasicJoinPluginTest {
+
+    public void testDownstreamTimingsRecorded() throws Exception {
+        List<FreeStyleProject> intermediateProjects = createFreeStyleProjects(3);
+        addJoinTriggerToSplitProject(splitProject, joinProject);
+        addProjectsToSplitProject(splitProject, intermediateProjects);
+        hudson.rebuildDependencyGraph();
+
+        final FreeStyleBuild splitBuild = splitProject.scheduleBuild2(0, new UserCause()).get();
+        waitUntilNoActivity();
+
+        final JoinAction joinAction = splitBuild.getAction(JoinAction.class);
+        assertNotNull(joinAction);
+        assertTrue("Join should have fired", joinAction.isFired());
+        assertEquals(3, joinAction.getDownstreamTimings().size());
+        final JoinAction.DownstreamTiming critical = joinAction.getCriticalPath();
+        assertNotNull(critical);
+        for (JoinAction.DownstreamTiming timing : joinAction.getDownstreamTimings()) {
+            assertTrue(timing.getFinishedAt() <= critical.getFinishedAt());
+            assertTrue(timing.getStartedAt() >= joinAction.getArmedAt());
+        }
+        assertTrue(joinAction.getFiredAt() >= joinAction.getLastDownstreamFinishedAt());
+        assertEquals(joinAction.getFiredAt() - joinAction.getLastDownstreamFinishedAt(), joinAction.getIdleMillis());
+    }
+
+    public void testJoinLogRecordsChanges() throws Exception {
+        List<FreeStyleProject> intermediateProjects = createFreeStyleProjects(3);
+        addJoinTriggerToSplitProject(splitProject, joinProject);
+        addProjectsToSplitProject(splitProject, intermediateProjects);
+        hudson.rebuildDependencyGraph();
+
+        final FreeStyleBuild splitBuild = splitProject.scheduleBuild2(0, new UserCause()).get();
+        waitUntilNoActivity();
+
+        final List<JoinLog.Entry> entries = splitBuild.getAction(JoinAction.class).getLogEntries();
+        assertEquals(4, entries.size());
+        for (int i = 0; i < 3; i++) {
+            assertEquals("completed", entries.get(i).getEvent());
+            assertEquals(2 - i, entries.get(i).getPendingCount());
+        }
+        assertEquals("fired", entries.get(3).getEvent());
+        for (FreeStyleProject intermediateProject : intermediateProjects) {
+            // the pending projects are only printed once, by the split build
+            assertFalse(getUniqueBuild(intermediateProject).getLog().contains("still waiting for"));
+        }
+    }
+
+    public void testReportAndExport() throws Exception {
+        FreeStyleProject intermediateProject = createFreeStyleProjectWithNoQuietPeriod();
+        addJoinTriggerToSplitProject(splitProject, joinProject);
+        addProjectToSplitProject(splitProject, intermediateProject);
+        hudson.rebuildDependencyGraph();
+
+        splitProject.scheduleBuild2(0, new UserCause()).get();
+        waitUntilNoActivity();
+        final FreeStyleBuild splitBuild = splitProject.scheduleBuild2(0, new UserCause()).get();
+        waitUntilNoActivity();
+
+        assertEquals(2, splitBuild.getAction(JoinAction.class).getTrend().size());
+
+        final WebClient webClient = createWebClient();
+        webClient.getPage(splitBuild, "join/");
+        final String json = webClient.goTo(splitBuild.getUrl() + "join/api/json", "application/json").getWebResponse().getContentAsString();
+        assertTrue(json, json.contains("\"downstreamTimings\""));
+        assertTrue(json, json.contains(intermediateProject.getName()));
+    }
+
+    public void testJoinHistoryFromSummaries() throws Exception {
+        FreeStyleProject intermediateProject = createFreeStyleProjectWithNoQuietPeriod();
+        addJoinTriggerToSplitProject(splitProject, joinProject);
+        addProjectToSplitProject(splitProject, intermediateProject);
+        hudson.rebuildDependencyGraph();
+
+        final FreeStyleBuild splitBuild = splitProject.scheduleBuild2(0, new UserCause()).get();
+        waitUntilNoActivity();
+
+        final JoinProjectAction history = splitProject.getAction(JoinProjectAction.class);
+        assertNotNull(history);
+        final List<JoinSummary> summaries = history.getSummaries();
+        assertEquals(1, summaries.size());
+        final JoinSummary summary = summaries.get(0);
+        assertEquals(splitBuild.getNumber(), summary.getBuildNumber());
+        assertEquals(JoinSummary.Status.FIRED, summary.getStatus());
+        assertEquals(0, summary.getPendingCount());
+        assertEquals(1, summary.getCompletedCount());
+        assertEquals(splitBuild.getAction(JoinAction.class).getFiredAt(), summary.getFiredAt());
+
+        final String json = createWebClient().goTo(splitProject.getUrl() + "joinHistory/api/json?depth=1", "application/json")
+                .getWebResponse().getContentAsString();
+        assertTrue(json, json.contains("\"FIRED\""));
+    }
+}
@@ -0,0 +1,124 @@
+package join;
+
+import hudson.XmlFile;
+import hudson.model.Cause.UserCause;
+import hudson.model.FreeStyleBuild;
+import hudson.model.FreeStyleProject;
+import hudson.model.Result;
+import hudson.model.Saveable;
+import hudson.model.listeners.SaveableListener;
+import org.jvnet.hudson.test.TestExtension;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadInfo;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+
+/**
+ * Runs joins over a large number of downstream projects and checks wall-clock time, lock contention, the number of
+ * build.xml writes and the console output of the split build against bounds derived from the number of children.
+ * <p>
+ * The default size keeps the regular test run short, <code>mvn test -Pscale</code> runs the sizes of production
+ * setups. Other sizes are set with e.g. <code>-Djoin.scale.children=1000,5000 -Djoin.scale.executors=64</code>.
+ */
+public class JoinScaleTest extends BasicJoinPluginTest {
+    private static final String CHILDREN = System.getProperty("join.scale.children", "200");
+    private static final int EXECUTORS = Integer.getInteger("join.scale.executors", 16);
+
+    /** Seconds allowed for each wave of children running at once, and for starting and finishing the join. */
+    private static final int SECONDS_PER_WAVE = 5;
+    private static final int BASE_SECONDS = 60;
+    /** Milliseconds all threads together may be blocked per child. */
+    private static final int BLOCKED_MILLIS_PER_CHILD = 50;
+    /** Completions are flushed in bursts, a save per completion means they are not. */
+    private static final double SAVES_PER_CHILD = 0.5;
+    private static final int BASE_SAVES = 10;
+    /** Bytes of console output per child, output growing with the square of the children exceeds it. */
+    private static final int LOG_BYTES_PER_CHILD = 1024;
+    private static final int BASE_LOG_BYTES = 64 * 1024;
+
+    private static final Logger LOGGER = Logger.getLogger(JoinScaleTest.class.getName());
+
+    static final AtomicInteger splitBuildSaves = new AtomicInteger();
+    static volatile FreeStyleProject countedSplitProject;
+
+    public void testLargeFanOut() throws Exception {
+        hudson.setNumExecutors(EXECUTORS);
+        for (String children : CHILDREN.split(",")) {
+            runFanOut(Integer.parseInt(children.trim()));
+        }
+    }
+
+    private void runFanOut(int children) throws Exception {
+        final FreeStyleProject splitProject = createFreeStyleProjectWithNoQuietPeriod();
+        final FreeStyleProject joinProject = createFreeStyleProjectWithNoQuietPeriod();
+        List<FreeStyleProject> intermediateProjects = new ArrayList<FreeStyleProject>(children);
+        for (int i = 0; i < children; i++) {
+            FreeStyleProject project = createFreeStyleProjectWithNoQuietPeriod();
+            project.getPublishersList().add(new ResultSetter(Result.SUCCESS));
+            intermediateProjects.add(project);
+        }
+        addJoinTriggerToSplitProject(splitProject, joinProject);
+        addProjectsToSplitProject(splitProject, intermediateProjects);
+        hudson.rebuildDependencyGraph();
+
+        final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        if (threads.isThreadContentionMonitoringSupported()) {
+            threads.setThreadContentionMonitoringEnabled(true);
+        }
+        final long blockedBefore = blockedMillis(threads);
+        countedSplitProject = splitProject;
+        splitBuildSaves.set(0);
+        final long start = System.currentTimeMillis();
+
+        final FreeStyleBuild splitBuild = splitProject.scheduleBuild2(0, new UserCause()).get();
+        waitUntilNoActivity();
+
+        final long seconds = (System.currentTimeMillis() - start) / 1000;
+        final long blocked = blockedMillis(threads) - blockedBefore;
+        final int saves = splitBuildSaves.get();
+        final long logBytes = splitBuild.getLogFile().length();
+        LOGGER.info(String.format("%d children on %d executors: %d s, %d ms blocked, %d split build saves, %d bytes logged",
+                children, EXECUTORS, seconds, blocked, saves, logBytes));
+
+        final JoinAction joinAction = splitBuild.getAction(JoinAction.class);
+        assertTrue(joinAction.getPendingDownstreamProjects().isEmpty());
+        assertEquals(children, joinAction.getCompletedDownstreamProjects().size());
+        final List<FreeStyleBuild> intermediateBuilds = JoinScaleTest.<FreeStyleProject,FreeStyleBuild>getUniqueBuilds(intermediateProjects);
+        final FreeStyleBuild joinBuild = getUniqueBuild(joinProject);
+        assertInSequence(splitBuild, intermediateBuilds, joinBuild);
+
+        final long waves = (children + EXECUTORS - 1) / EXECUTORS;
+        final long maxSeconds = BASE_SECONDS + SECONDS_PER_WAVE * waves;
+        final long maxBlocked = (long) BLOCKED_MILLIS_PER_CHILD * children;
+        final long maxSaves = BASE_SAVES + (long) (SAVES_PER_CHILD * children);
+        final long maxLogBytes = BASE_LOG_BYTES + (long) LOG_BYTES_PER_CHILD * children;
+        assertTrue(children + " children took " + seconds + " s, expected at most " + maxSeconds, seconds <= maxSeconds);
+        assertTrue(children + " children blocked for " + blocked + " ms, expected at most " + maxBlocked, blocked <= maxBlocked);
+        assertTrue(children + " children saved the split build " + saves + " times, expected at most " + maxSaves, saves <= maxSaves);
+        assertTrue(children + " children logged " + logBytes + " bytes, expected at most " + maxLogBytes, logBytes <= maxLogBytes);
+    }
+
+    private static long blockedMillis(ThreadMXBean threads) {
+        long blocked = 0;
+        for (ThreadInfo info : threads.getThreadInfo(threads.getAllThreadIds())) {
+            if (info != null && info.getBlockedTime() > 0) {
+                blocked += info.getBlockedTime();
+            }
+        }
+        return blocked;
+    }
+
+    @TestExtension("testLargeFanOut")
+    public static class SplitBuildSaveCounter extends SaveableListener {
+        @Override
+        public void onChange(Saveable o, XmlFile file) {
+            if (o instanceof FreeStyleBuild && ((FreeStyleBuild) o).getProject() == countedSplitProject) {
+                splitBuildSaves.incrementAndGet();
+            }
+        }
+    }
+}
@@ -0,0 +1,59 @@
+package join;
+
+import hudson.model.Run;
+import org.junit.Test;
+
+import java.lang.reflect.Method;
+import java.net.URL;
+import java.net.URLClassLoader;
+
+import static org.junit.Assert.*;
+
+public class JoinStepListenerTest {
+
+    @Test
+    public void loadsAndIgnoresFiredJoinsWithoutPipeline() throws Exception {
+        ClassLoader loader = new WithoutPipeline();
+        try {
+            loader.loadClass(JoinStep.class.getName());
+            fail("The Pipeline plugins should not be visible");
+        } catch (NoClassDefFoundError expected) {
+            // the step itself needs them
+        }
+
+        Class<?> listenerClass = loader.loadClass(JoinStepListener.class.getName());
+        Class<?> actionClass = loader.loadClass(JoinAction.class.getName());
+        assertSame(loader, listenerClass.getClassLoader());
+        Method onFired = listenerClass.getMethod("onFired", Run.class, actionClass);
+        // returns without resuming any step, the split build is never looked at
+        onFired.invoke(listenerClass.newInstance(), null, null);
+    }
+
+    /**
+     * Loads the classes of the plugin itself, hiding the Pipeline plugins as if they were not installed.
+     */
+    private static class WithoutPipeline extends URLClassLoader {
+        WithoutPipeline() {
+            super(new URL[] {JoinStepListener.class.getProtectionDomain().getCodeSource().getLocation()},
+                    JoinStepListenerTest.class.getClassLoader());
+        }
+
+        @Override
+        protected synchronized Class<?> loadClass(String name, boolean resolve) throws ClassNotFoundException {
+            if (name.startsWith("org.jenkinsci.plugins.workflow.")) {
+                throw new ClassNotFoundException(name);
+            }
+            if (name.startsWith("join.")) {
+                Class<?> c = findLoadedClass(name);
+                if (c == null) {
+                    c = findClass(name);
+                }
+                if (resolve) {
+                    resolveClass(c);
+                }
+                return c;
+            }
+            return super.loadClass(name, resolve);
+        }
+    }
+}
@@ -0,0 +1,41 @@
+package join;
+
+import hudson.model.Cause;
+import hudson.model.FreeStyleBuild;
+import hudson.model.FreeStyleProject;
+import hudson.model.Result;
+import hudson.model.queue.QueueTaskFuture;
+import org.jenkinsci.plugins.workflow.cps.CpsFlowDefinition;
+import org.jenkinsci.plugins.workflow.job.WorkflowJob;
+import org.jenkinsci.plugins.workflow.job.WorkflowRun;
+
+public class JoinStepTest extends BasicJoinPluginTest {
+
+    public void testPipelineResumesWhenJoinFires() throws Exception {
+        FreeStyleProject first = createFreeStyleProjectWithNoQuietPeriod();
+        FreeStyleProject second = createFreeStyleProjectWithNoQuietPeriod();
+        WorkflowJob pipeline = jenkins.createProject(WorkflowJob.class, "pipeline");
+        pipeline.setDefinition(new CpsFlowDefinition(
+                "joinOn(projects: '" + first.getName() + ", " + second.getName() + "') {\n"
+                        + "  echo 'armed'\n"
+                        + "}\n"
+                        + "echo 'joined'"));
+
+        QueueTaskFuture<WorkflowRun> future = pipeline.scheduleBuild2(0);
+        WorkflowRun run = future.waitForStart();
+        while (run.getAction(JoinAction.class) == null) {
+            Thread.sleep(100);
+        }
+        first.scheduleBuild2(0, new Cause.UpstreamCause(run)).get();
+        assertTrue("Pipeline should wait for the join", run.isBuilding());
+        final FreeStyleBuild secondBuild = second.scheduleBuild2(0, new Cause.UpstreamCause(run)).get();
+
+        assertBuildStatusSuccess(future);
+        assertLogContains("joined", run);
+        final JoinAction joinAction = run.getAction(JoinAction.class);
+        assertTrue(joinAction.isFired());
+        assertEquals(Result.SUCCESS, joinAction.getOverallResult());
+        assertEquals(2, joinAction.getCompletedDownstreamProjects().size());
+        assertTrue(secondBuild.getTimeInMillis() + secondBuild.getDuration() <= run.getTimeInMillis() + run.getDuration());
+    }
+}
@@ -0,0 +1,56 @@
+package join;
+
+import hudson.model.Cause.UserCause;
+import hudson.model.FreeStyleProject;
+import hudson.model.RootAction;
+import net.sf.json.JSONObject;
+
+import java.util.List;
+
+public class JoinTopologyTest extends BasicJoinPluginTest {
+
+    public void testTopology() throws Exception {
+        List<FreeStyleProject> intermediateProjects = createFreeStyleProjects(2);
+        addJoinTriggerToSplitProject(splitProject, joinProject);
+        addProjectsToSplitProject(splitProject, intermediateProjects);
+        hudson.rebuildDependencyGraph();
+
+        splitProject.scheduleBuild2(0, new UserCause()).get();
+        waitUntilNoActivity();
+
+        final JoinTopology topology = jenkins.getExtensionList(RootAction.class).get(JoinTopology.class);
+        // the analytics are written in the background
+        JoinAnalytics.flush();
+        final List<JoinTopology.Split> splits = topology.getSplits();
+        assertEquals(1, splits.size());
+        final JoinTopology.Split split = splits.get(0);
+        assertEquals(splitProject.getFullName(), split.getName());
+        assertEquals(2, split.getFanOut().size());
+        for (JoinTopology.Edge edge : split.getFanOut()) {
+            assertTrue(edge.getAverageLatencyMillis() >= 0);
+        }
+        assertEquals(1, split.getFanIn().size());
+        assertEquals(joinProject.getFullName(), split.getFanIn().get(0).getTo());
+
+        // the layout is kept until the dependency graph is rebuilt
+        final JoinTopology.Layout layout = topology.getLayout();
+        assertSame(layout, topology.getLayout());
+        hudson.rebuildDependencyGraph();
+        assertNotSame(layout, topology.getLayout());
+
+        // the latencies outlive the layout, until another join of the split project is written
+        final JSONObject latencies = JoinTopology.getLatencies(splitProject);
+        assertSame(latencies, JoinTopology.getLatencies(splitProject));
+        assertTrue(topology.getSplits().get(0).getFanOut().get(0).getAverageLatencyMillis() >= 0);
+        splitProject.scheduleBuild2(0, new UserCause()).get();
+        waitUntilNoActivity();
+        JoinAnalytics.flush();
+        assertNotSame(latencies, JoinTopology.getLatencies(splitProject));
+        assertEquals(2, JoinTopology.getLatencies(splitProject).getInt("joins"));
+
+        final WebClient webClient = createWebClient();
+        webClient.goTo("joinTopology/");
+        final String json = webClient.goTo("joinTopology/api/json", "application/json").getWebResponse().getContentAsString();
+        assertTrue(json, json.contains(splitProject.getFullName()));
+    }
+}
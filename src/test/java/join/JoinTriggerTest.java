@@ -1,22 +1,34 @@
 package join;
 
 import com.gargoylesoftware.htmlunit.html.HtmlPage;
+import hudson.Launcher;
+import hudson.model.AbstractBuild;
+import hudson.model.BuildListener;
+import hudson.model.Cause;
 import hudson.model.Cause.UserCause;
 import hudson.model.Descriptor;
 import hudson.model.FreeStyleBuild;
 import hudson.model.FreeStyleProject;
+import hudson.model.ParametersAction;
+import hudson.model.ParametersDefinitionProperty;
 import hudson.model.Project;
+import hudson.model.Run;
 import hudson.model.Saveable;
+import hudson.model.StringParameterDefinition;
+import hudson.model.StringParameterValue;
 import hudson.plugins.parameterizedtrigger.BuildTriggerConfig;
 import hudson.plugins.parameterizedtrigger.PredefinedBuildParameters;
 import hudson.plugins.parameterizedtrigger.ResultCondition;
 import hudson.slaves.DumbSlave;
 import hudson.tasks.Publisher;
 import hudson.util.DescribableList;
+import hudson.util.OneShotEvent;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.ExecutionException;
 import org.jvnet.hudson.test.CaptureEnvironmentBuilder;
+import org.jvnet.hudson.test.TestBuilder;
 
 /**
  *
@@ -123,6 +135,21 @@ public class JoinTriggerTest extends BasicJoinPluginTest {
         assertInSequence(splitBuild, intermediateBuilds, otherJoinBuild);
     }
 
+    public void testSplitBuildNotifiedOncePerCompletion() throws Exception {
+        FreeStyleProject intermediateProject = createFreeStyleProjectWithNoQuietPeriod();
+        addJoinTriggerToSplitProject(splitProject, joinProject);
+        addProjectToSplitProject(splitProject, intermediateProject);
+        hudson.rebuildDependencyGraph();
+
+        splitProject.scheduleBuild2(0, new UserCause()).get();
+        waitUntilNoActivity();
+        final FreeStyleBuild intermediateBuild = getUniqueBuild(intermediateProject);
+        final String log = intermediateBuild.getLog();
+        final String notification = "Notifying upstream of completion";
+        assertEquals(log, log.indexOf(notification), log.lastIndexOf(notification));
+        getUniqueBuild(joinProject);
+    }
+
     private void runTestForNProjects(int n) throws InterruptedException, Exception, ExecutionException {
         List<FreeStyleProject> intermediateProjects = createFreeStyleProjects(n);
         addJoinTriggerToSplitProject(splitProject, joinProject);
@@ -236,4 +263,58 @@ public class JoinTriggerTest extends BasicJoinPluginTest {
         assertEqualBeans(configBefore, configAfter, "projects,condition");
     }
 
+
+    public void testDownstreamParametersAggregatedIntoJoinBuild() throws Exception {
+        final CaptureEnvironmentBuilder builder = new CaptureEnvironmentBuilder();
+        joinProject.getBuildersList().add(builder);
+        FreeStyleProject intermediateProject = createFreeStyleProjectWithNoQuietPeriod();
+        intermediateProject.addProperty(new ParametersDefinitionProperty(
+                new StringParameterDefinition("RESULT_URL", "http://example.com/result")));
+        addJoinTriggerToSplitProject(splitProject, joinProject);
+        splitProject.getPublishersList().get(JoinTrigger.class).setAggregateParameters("RESULT_URL, MISSING");
+        addProjectToSplitProject(splitProject, intermediateProject);
+        hudson.rebuildDependencyGraph();
+
+        final FreeStyleBuild splitBuild = splitProject.scheduleBuild2(0, new UserCause()).get();
+        waitUntilNoActivity();
+        final FreeStyleBuild joinBuild = getUniqueBuild(joinProject);
+        assertInSequence(splitBuild, getUniqueBuild(intermediateProject), joinBuild);
+        final String parameterName = intermediateProject.getName().replaceAll("[^A-Za-z0-9_]", "_") + "_RESULT_URL";
+        assertEquals("http://example.com/result", builder.getEnvVars().get(parameterName));
+        assertEquals(1, splitBuild.getAction(JoinAction.class).getAggregatedParameters().size());
+    }
+
+    public void testRepeatedDownstreamProjectJoinedOnEveryBuild() throws Exception {
+        final OneShotEvent release = new OneShotEvent();
+        FreeStyleProject intermediateProject = createFreeStyleProjectWithNoQuietPeriod();
+        intermediateProject.getBuildersList().add(new TestBuilder() {
+            @Override
+            public boolean perform(AbstractBuild<?, ?> build, Launcher launcher, BuildListener listener)
+                    throws InterruptedException, IOException {
+                release.block();
+                return true;
+            }
+        });
+        addJoinTriggerToSplitProject(splitProject, joinProject);
+        addProjectToSplitProject(splitProject, intermediateProject);
+        hudson.rebuildDependencyGraph();
+
+        final FreeStyleBuild splitBuild = splitProject.scheduleBuild2(0, new UserCause()).get();
+        for (int shard = 1; shard <= 3; shard++) {
+            intermediateProject.scheduleBuild(0, new Cause.UpstreamCause((Run<?,?>) splitBuild),
+                    new ParametersAction(new StringParameterValue("SHARD", String.valueOf(shard))));
+        }
+        release.signal();
+        waitUntilNoActivity();
+
+        final List<FreeStyleBuild> intermediateBuilds = intermediateProject.getBuilds();
+        assertEquals(4, intermediateBuilds.size());
+        final FreeStyleBuild joinBuild = getUniqueBuild(joinProject);
+        assertFinished(splitBuild).beforeStarted(intermediateBuilds);
+        assertStarted(joinBuild).afterFinished(intermediateBuilds);
+        final JoinAction joinAction = splitBuild.getAction(JoinAction.class);
+        assertEquals(Integer.valueOf(4), joinAction.getTriggeredCounts().get(intermediateProject.getFullName()));
+        assertEquals(Integer.valueOf(4), joinAction.getCompletedCounts().get(intermediateProject.getFullName()));
+        assertTrue(joinAction.getPendingInstances().isEmpty());
+    }
 }
@@ -1,14 +1,23 @@
 package join;
 
+import hudson.model.AbstractBuild;
+import hudson.model.Action;
 import hudson.model.Cause.UserCause;
+import hudson.model.Descriptor;
 import hudson.model.FreeStyleBuild;
 import hudson.model.FreeStyleProject;
+import hudson.model.InvisibleAction;
+import hudson.model.ParameterValue;
 import hudson.model.ParametersAction;
 import hudson.model.StringParameterValue;
+import hudson.model.TaskListener;
+import hudson.plugins.parameterizedtrigger.AbstractBuildParameters;
+import hudson.plugins.parameterizedtrigger.BuildTriggerConfig;
 import hudson.plugins.parameterizedtrigger.CurrentBuildParameters;
 import hudson.plugins.parameterizedtrigger.PredefinedBuildParameters;
 import hudson.plugins.parameterizedtrigger.ResultCondition;
 import org.jvnet.hudson.test.CaptureEnvironmentBuilder;
+import org.jvnet.hudson.test.TestExtension;
 
 import java.util.List;
 
@@ -109,4 +118,84 @@ public class ParameterizedJoinTriggerTest extends BasicJoinPluginTest {
         assertNotNull("Builder should capture environment", builder.getEnvVars());
         assertEquals("value", builder.getEnvVars().get("KEY"));
     }
+
+    public void testCapturedParametersReusedAtJoin() throws Exception {
+        final CaptureEnvironmentBuilder builder = new CaptureEnvironmentBuilder();
+        joinProject.getBuildersList().add(builder);
+        addParameterizedJoinTriggerToProject(splitProject, joinProject, new PredefinedBuildParameters("KEY=value"));
+        splitProject.getPublishersList().get(JoinTrigger.class).setCaptureParameters(true);
+
+        FreeStyleProject intermediateProject = createFreeStyleProjectWithNoQuietPeriod();
+        addProjectToSplitProject(splitProject, intermediateProject);
+
+        hudson.rebuildDependencyGraph();
+
+        final FreeStyleBuild splitBuild = buildAndAssertSuccess(splitProject);
+        waitUntilNoActivity();
+
+        final JoinTrigger joinTrigger = splitProject.getPublishersList().get(JoinTrigger.class);
+        final BuildTriggerConfig config = joinTrigger.getJoinPublishers()
+                .get(hudson.plugins.parameterizedtrigger.BuildTrigger.class).getConfigs().get(0);
+        final List<ParameterValue> captured =
+                splitBuild.getAction(JoinAction.class).getCapturedParameters(JoinConfigStore.digest(config));
+        assertNotNull("Parameters should be captured", captured);
+        assertEquals(1, captured.size());
+
+        final FreeStyleBuild joinBuild = getUniqueBuild(joinProject);
+        assertInSequence(splitBuild, getUniqueBuild(intermediateProject), joinBuild);
+        assertEquals("value", builder.getEnvVars().get("KEY"));
+    }
+
+    public void testNonParameterActionsResolvedAtJoin() throws Exception {
+        addParameterizedJoinTriggerToProject(splitProject, joinProject, new PredefinedBuildParameters("KEY=value"),
+                new MarkerParameters());
+        splitProject.getPublishersList().get(JoinTrigger.class).setCaptureParameters(true);
+
+        FreeStyleProject intermediateProject = createFreeStyleProjectWithNoQuietPeriod();
+        addProjectToSplitProject(splitProject, intermediateProject);
+
+        hudson.rebuildDependencyGraph();
+
+        final FreeStyleBuild splitBuild = buildAndAssertSuccess(splitProject);
+        waitUntilNoActivity();
+
+        final JoinTrigger joinTrigger = splitProject.getPublishersList().get(JoinTrigger.class);
+        final BuildTriggerConfig config = joinTrigger.getJoinPublishers()
+                .get(hudson.plugins.parameterizedtrigger.BuildTrigger.class).getConfigs().get(0);
+        assertNull("Parameters should be resolved when the join fires",
+                splitBuild.getAction(JoinAction.class).getCapturedParameters(JoinConfigStore.digest(config)));
+
+        final FreeStyleBuild joinBuild = getUniqueBuild(joinProject);
+        assertInSequence(splitBuild, getUniqueBuild(intermediateProject), joinBuild);
+        final MarkerAction marker = joinBuild.getAction(MarkerAction.class);
+        assertNotNull("The join build should get the actions of all parameters", marker);
+        assertEquals(splitBuild.getNumber(), marker.splitBuildNumber);
+        assertEquals("value", joinBuild.getAction(ParametersAction.class).getParameter("KEY").getValue());
+    }
+
+    /**
+     * Contributes an action which is not a {@link ParametersAction}.
+     */
+    public static class MarkerParameters extends AbstractBuildParameters {
+        @Override
+        public Action getAction(AbstractBuild<?,?> build, TaskListener listener) {
+            return new MarkerAction(build.getNumber());
+        }
+
+        @TestExtension("testNonParameterActionsResolvedAtJoin")
+        public static class DescriptorImpl extends Descriptor<AbstractBuildParameters> {
+            @Override
+            public String getDisplayName() {
+                return "Marker";
+            }
+        }
+    }
+
+    public static class MarkerAction extends InvisibleAction {
+        final int splitBuildNumber;
+
+        MarkerAction(int splitBuildNumber) {
+            this.splitBuildNumber = splitBuildNumber;
+        }
+    }
 }